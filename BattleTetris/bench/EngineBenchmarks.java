@@ -0,0 +1,315 @@
+import java.awt.Color;
+
+/** EngineBenchmarks.java
+ *
+ * Throughput and allocation of the engine's hot paths, on the same boards every time we measure:
+ * 	MyBoundedEnv.add, allObjects, forEachOccupied, Tetrad.translate and rotate, TetrisEngine.clearCompletedRows and
+ * 	addPendingRows, PowerUp's scramble, and TetrisHeuristicAI.think.
+ *
+ * Every benchmark runs on 4 fixtures, each a board taken from a seeded AI vs AI game:
+ * 	empty: a fresh board with only the first Tetrad on it
+ * 	midgame: the stack about 8 rows high
+ * 	topout: the stack about 18 rows high
+ * 	garbage: a low stack with 10 rows of garbage pushed in under it
+ *
+ * Like JMH, each benchmark gets warmup iterations that aren't counted, then timed iterations, and
+ * 	every result goes into a sink so the JIT can't throw the work away. Benchmarks that change the
+ * 	board put the fixture back first (restore), so they include its cost. restore() also turns the
+ * 	falling Tetrad back, so no benchmark depends on where the one before it left the board. The restore benchmark on
+ * 	its own gives that cost, to subtract.
+ * Allocation is read from the HotSpot ThreadMXBean, see ThinkAllocationBenchmark.allocatedBytes().
+ *
+ * Usage: java EngineBenchmarks [filter] [ms per iteration]
+ * 	filter only runs benchmarks (or fixtures) whose name contains it, "all" runs everything.
+ *
+ */
+
+public class EngineBenchmarks
+{
+	static int WARMUP_ITERATIONS = 3;
+	static int ITERATIONS = 5;
+	static long iterationMillis = 500;
+	static long sink; // every op's result ends up here
+
+	/** One board to benchmark on. restore() puts it back the way it was when it was captured. */
+	static class Fixture
+	{
+		String name;
+		TetrisEngine engine;
+		MyBoundedEnv env;
+		Block[] blocks;
+		Location[] locations;
+		int[] powerTypes;
+		Block[] fill; // blocks that complete the bottom 2 rows, for clearCompletedRows
+		Location free; // an empty cell, for add
+		Tetrad rad; // the falling Tetrad, whose blocks are among blocks
+		int orientation; // ... and how it was turned, since rotate's tables depend on it
+
+		Fixture(String name, TetrisEngine engine)
+		{
+			this.name = name;
+			this.engine = engine;
+			env = engine.board();
+			Locatable[] objects = env.allObjects();
+			blocks = new Block[objects.length];
+			locations = new Location[objects.length];
+			powerTypes = new int[objects.length];
+			for (int i = 0; i < objects.length; i++)
+			{
+				blocks[i] = (Block)objects[i];
+				locations[i] = blocks[i].location();
+				powerTypes[i] = blocks[i].getPowerType();
+			}
+			rad = engine.currentRad();
+			orientation = rad.orientation();
+
+			int gaps = 0;
+			for (int i = env.numRows() - 2; i < env.numRows(); i++)
+				gaps += env.numCols() - env.rowCount(i);
+			fill = new Block[gaps];
+			int n = 0;
+			for (int i = env.numRows() - 2; i < env.numRows(); i++)
+				for (int j = 0; j < env.numCols(); j++)
+					if (env.isEmpty(new Location(i, j)))
+					{
+						fill[n] = new Block(Color.gray);
+						fill[n++].setLocation(new Location(i, j));
+					}
+
+			for (int i = 0; i < env.numRows() && free == null; i++)
+				for (int j = 0; j < env.numCols() && free == null; j++)
+					if (env.isEmpty(new Location(i, j)))
+						free = new Location(i, j);
+		}
+
+		void restore()
+		{
+			env.clearAll();
+			for (int i = 0; i < blocks.length; i++)
+			{
+				blocks[i].setLocation(locations[i]);
+				blocks[i].setPowerType(powerTypes[i]);
+				env.add(blocks[i]);
+			}
+			rad.setOrientation(orientation);
+		}
+	}
+
+	/** A benchmark; setup() is called once per fixture, op() over and over. */
+	static abstract class Benchmark
+	{
+		String name;
+		Fixture f;
+
+		Benchmark(String name)
+		{
+			this.name = name;
+		}
+		void setup(Fixture f)
+		{
+			this.f = f;
+			f.restore();
+		}
+		abstract long op();
+	}
+
+	static Benchmark[] benchmarks()
+	{
+		return new Benchmark[] {
+			new Benchmark("restore") {
+				long op()
+				{
+					f.restore();
+					return f.env.numObjects();
+				}
+			},
+			new Benchmark("MyBoundedEnv.add") {
+				Block block = new Block(Color.gray);
+				long op()
+				{
+					block.setLocation(f.free);
+					f.env.add(block);
+					f.env.remove(block);
+					return f.env.numObjects();
+				}
+			},
+			new Benchmark("MyBoundedEnv.allObjects") {
+				long op()
+				{
+					return f.env.allObjects().length;
+				}
+			},
+			new Benchmark("MyBoundedEnv.forEachOccupied") {
+				long count;
+				MyBoundedEnv.CellVisitor counter = new MyBoundedEnv.CellVisitor() {
+					public void visit(int row, int col, Locatable a)
+					{
+						count += row + col;
+					}
+				};
+				long op()
+				{
+					count = 0;
+					f.env.forEachOccupied(counter);
+					return count;
+				}
+			},
+			new Benchmark("Tetrad.translate") {
+				long op()
+				{
+					Tetrad rad = f.engine.currentRad();
+					boolean left = rad.translate(0, -1);
+					boolean right = rad.translate(0, 1);
+					return (left ? 1 : 0) + (right ? 2 : 0);
+				}
+			},
+			new Benchmark("Tetrad.rotate") {
+				long op()
+				{
+					Tetrad rad = f.engine.currentRad();
+					int turned = 0;
+					for (int r = 0; r < 4; r++)
+						if (rad.rotate())
+							turned++;
+					return turned;
+				}
+			},
+			new Benchmark("TetrisEngine.clearCompletedRows") {
+				long op()
+				{
+					f.restore();
+					for (Block b : f.fill)
+						f.env.add(b);
+					f.engine.clearCompletedRows();
+					return f.env.numObjects();
+				}
+			},
+			new Benchmark("TetrisEngine.addPendingRows") {
+				long op()
+				{
+					f.restore();
+					f.engine.increasePendingRows(2);
+					f.engine.addPendingRows();
+					return f.env.numObjects();
+				}
+			},
+			new Benchmark("PowerUp.scramble") {
+				PowerUp scramble;
+				void setup(Fixture f)
+				{
+					super.setup(f);
+					scramble = new PowerUp(f.engine, f.env, f.engine.previewBoard(), PowerUp.POWERUP_SCRAMBLE);
+				}
+				long op()
+				{
+					f.restore();
+					scramble.beforeAction();
+					return f.env.rowBits(f.env.numRows() - 1);
+				}
+			},
+			new Benchmark("TetrisHeuristicAI.think") {
+				TetrisHeuristicAI ai;
+				void setup(Fixture f)
+				{
+					super.setup(f);
+					ai = new TetrisHeuristicAI(f.engine);
+					f.engine.setAI(null); // only called from here
+				}
+				long op()
+				{
+					ai.curRad = null;
+					ai.think();
+					return ai.desValues[0];
+				}
+			},
+		};
+	}
+
+	static Fixture[] fixtures()
+	{
+		Fixture[] fixtures = new Fixture[4];
+
+		TetrisEngine empty = new TetrisEngine(0);
+		fixtures[0] = new Fixture("empty", empty);
+		fixtures[1] = new Fixture("midgame", ThinkAllocationBenchmark.playUntil(8));
+
+		TetrisEngine top = ThinkAllocationBenchmark.playUntil(12);
+		top.increasePendingRows(Math.max(1, 18 - ThinkAllocationBenchmark.stackHeight(top)));
+		top.addPendingRows();
+		fixtures[2] = new Fixture("topout", top);
+
+		TetrisEngine garbage = ThinkAllocationBenchmark.playUntil(3);
+		garbage.increasePendingRows(10);
+		garbage.addPendingRows();
+		fixtures[3] = new Fixture("garbage", garbage);
+		return fixtures;
+	}
+
+	public static void main(String[] args)
+	{
+		System.setProperty("java.awt.headless", "true");
+		String filter = "all";
+		if (args.length > 0)
+			filter = args[0];
+		if (args.length > 1)
+			iterationMillis = Long.parseLong(args[1]);
+
+		Fixture[] fixtures = fixtures();
+		System.out.printf("%-32s %-8s %14s %12s %10s%n", "Benchmark", "Fixture", "ops/s", "+-", "B/op");
+		for (Benchmark b : benchmarks())
+			for (Fixture f : fixtures)
+			{
+				if (!filter.equals("all") && !b.name.contains(filter) && !f.name.contains(filter))
+					continue;
+				b.setup(f);
+				run(b);
+			}
+		if (sink == 42)
+			System.out.println();
+	}
+
+	static void run(Benchmark b)
+	{
+		for (int i = 0; i < WARMUP_ITERATIONS; i++)
+			iteration(b);
+
+		double[] rates = new double[ITERATIONS];
+		long ops = 0;
+		long bytesBefore = ThinkAllocationBenchmark.allocatedBytes();
+		for (int i = 0; i < ITERATIONS; i++)
+		{
+			long begin = System.nanoTime();
+			long n = iteration(b);
+			rates[i] = n / ((System.nanoTime() - begin) / 1e9);
+			ops += n;
+		}
+		long bytes = ThinkAllocationBenchmark.allocatedBytes() - bytesBefore;
+
+		double mean = 0;
+		for (double rate : rates)
+			mean += rate / rates.length;
+		double variance = 0;
+		for (double rate : rates)
+			variance += (rate - mean) * (rate - mean) / (rates.length - 1);
+
+		String alloc = (bytesBefore >= 0) ? String.format("%.1f", (double)bytes / ops) : "n/a";
+		System.out.printf("%-32s %-8s %14.0f %12.0f %10s%n", b.name, b.f.name, mean, Math.sqrt(variance), alloc);
+	}
+
+	// Ops run in one iteration. The clock is only read every 16 ops, so it costs next to nothing.
+	static long iteration(Benchmark b)
+	{
+		long end = System.nanoTime() + iterationMillis * 1000000;
+		long ops = 0;
+		long result = 0;
+		do
+		{
+			for (int k = 0; k < 16; k++)
+				result += b.op();
+			ops += 16;
+		}
+		while (System.nanoTime() < end);
+		sink += result;
+		return ops;
+	}
+}
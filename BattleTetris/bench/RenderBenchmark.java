@@ -0,0 +1,86 @@
+import java.util.ArrayList;
+
+import javax.swing.SwingUtilities;
+
+/** RenderBenchmark.java
+ * 
+ * Repaint cost of a two-player game: CPU per tick spent in JPanelBlockDisplay.render, and how
+ * 	many cells it touched. The snapshots come from seeded AI vs AI games, published after every tick
+ * 	just as TetrisControl does. Each is rendered twice on the event thread, into two displays:
+ * 	one that only touches changed cells, and one that is made to repaintAll() first, which is
+ * 	what every render used to cost.
+ * 
+ * Runs headless. The displays are never on screen, so this measures setting up the JPanels,
+ * 	not Swing's painting.
+ * 
+ * Usage: java RenderBenchmark [games]
+ * 
+ */
+
+public class RenderBenchmark
+{
+	public static void main(String[] args) throws Exception
+	{
+		System.setProperty("java.awt.headless", "true");
+		int games = 5;
+		if (args.length > 0)
+			games = Integer.parseInt(args[0]);
+
+		final ArrayList<BoardSnapshot[]> ticks = new ArrayList<BoardSnapshot[]>();
+		for (int i = 0; i < games; i++)
+		{
+			TetrisEngine left = new TetrisEngine();
+			TetrisEngine right = new TetrisEngine();
+			new TetrisHeuristicAI(left);
+			new TetrisHeuristicAI(right);
+			TetrisMatch match = new TetrisMatch(right, left, i);
+			while (!match.isOver())
+			{
+				match.tick();
+				left.publish();
+				right.publish();
+				ticks.add(new BoardSnapshot[] { left.snapshot(), right.snapshot() });
+			}
+		}
+
+		final MyBoundedEnv board = new MyBoundedEnv(TetrisEngine.GAME_ROWS, TetrisEngine.GAME_COLS);
+		final JPanelBlockDisplay[] dirty = { new JPanelBlockDisplay(board), new JPanelBlockDisplay(board) };
+		final JPanelBlockDisplay[] full = { new JPanelBlockDisplay(board), new JPanelBlockDisplay(board) };
+		final long[] nanos = new long[2];
+
+		SwingUtilities.invokeAndWait(new Runnable()
+		{
+			public void run()
+			{
+				for (int pass = 0; pass < 2; pass++) // the first pass is warmup
+				{
+					long dirtyNanos = 0;
+					long fullNanos = 0;
+					for (BoardSnapshot[] tick : ticks)
+					{
+						long begin = System.nanoTime();
+						for (int p = 0; p < 2; p++)
+							dirty[p].render(tick[p]);
+						long middle = System.nanoTime();
+						for (int p = 0; p < 2; p++)
+						{
+							full[p].repaintAll();
+							full[p].render(tick[p]);
+						}
+						fullNanos += System.nanoTime() - middle;
+						dirtyNanos += middle - begin;
+					}
+					nanos[0] = dirtyNanos;
+					nanos[1] = fullNanos;
+				}
+			}
+		});
+
+		int n = ticks.size();
+		System.out.println(n + " ticks, 2 boards each");
+		System.out.println("  changed cells only: " + nanos[0] / n / 1000.0 + " us per tick, "
+			+ (double)dirty[0].cellsUpdated() / dirty[0].renders() + " cells per render");
+		System.out.println("  every cell:         " + nanos[1] / n / 1000.0 + " us per tick, "
+			+ (double)full[0].cellsUpdated() / full[0].renders() + " cells per render");
+	}
+}
@@ -0,0 +1,114 @@
+import java.lang.management.ManagementFactory;
+
+/** ThinkAllocationBenchmark.java
+ * 
+ * Measures how many bytes TetrisHeuristicAI.think() allocates, and how fast it runs.
+ * 	The boards come from AI vs AI games played until the stack is a few rows high. The games are
+ * 	seeded, so every run measures the same boards.
+ * 	think() only searches when the current Tetrad changed, so curRad is cleared before every call.
+ * 
+ * Allocation is read from the HotSpot ThreadMXBean (com.sun.management), so this needs a
+ * 	HotSpot-based JVM. On other JVMs only the time is reported.
+ * 
+ * Usage: java ThinkAllocationBenchmark [thinks per board] [parallel]
+ * 
+ */
+
+public class ThinkAllocationBenchmark
+{
+	public static void main(String[] args)
+	{
+		System.setProperty("java.awt.headless", "true");
+		int thinks = 20000;
+		if (args.length > 0)
+			thinks = Integer.parseInt(args[0]);
+		boolean parallel = args.length > 1 && args[1].equals("parallel");
+
+		TetrisEngine[] boards = new TetrisEngine[8];
+		for (int i = 0; i < boards.length; i++)
+			boards[i] = playUntil(4 + i);
+
+		TetrisHeuristicAI[] ais = new TetrisHeuristicAI[boards.length];
+		for (int i = 0; i < boards.length; i++)
+		{
+			ais[i] = new TetrisHeuristicAI(boards[i]);
+			ais[i].setParallel(parallel);
+		}
+
+		// Warm up: fill the AI's buffers and let the JIT compile the search.
+		run(ais, thinks / 4);
+
+		long bytesBefore = allocatedBytes();
+		long begin = System.nanoTime();
+		run(ais, thinks);
+		long nanos = System.nanoTime() - begin;
+		long bytes = allocatedBytes() - bytesBefore;
+
+		long calls = (long)thinks * ais.length;
+		System.out.println("think() " + (parallel ? "parallel" : "serial") + ": " + calls + " calls");
+		System.out.println("  " + (nanos / calls) + " ns per think");
+		if (bytesBefore >= 0)
+			System.out.println("  " + ((double)bytes / calls) + " bytes allocated per think");
+		else
+			System.out.println("  allocation counting is not supported by this JVM");
+	}
+
+	private static void run(TetrisHeuristicAI[] ais, int thinks)
+	{
+		for (int n = 0; n < thinks; n++)
+			for (TetrisHeuristicAI ai : ais)
+			{
+				ai.curRad = null;
+				ai.think();
+			}
+	}
+
+	// An AI vs AI game, stopped once the left board's highest block is at least 'height' rows up
+	static TetrisEngine playUntil(int height)
+	{
+		return playUntil(height, height);
+	}
+	static TetrisEngine playUntil(int height, long seed)
+	{
+		TetrisEngine left = new TetrisEngine();
+		TetrisEngine right = new TetrisEngine();
+		new TetrisHeuristicAI(left);
+		new TetrisHeuristicAI(right);
+		TetrisMatch match = new TetrisMatch(right, left, seed);
+		while (!match.isOver() && stackHeight(left) < height)
+			match.tick();
+		if (match.isOver())
+			return playUntil(height, seed + 1000);
+		left.setAI(null);
+		return left;
+	}
+
+	// How high the settled blocks reach. The falling Tetrad doesn't count, it starts at the very top.
+	static int stackHeight(TetrisEngine engine)
+	{
+		MyBoundedEnv env = engine.board();
+		long[] rows = new long[env.numRows()];
+		for (int i = 0; i < rows.length; i++)
+			rows[i] = env.rowBits(i);
+		if (engine.currentRad() != null)
+			for (Block b : engine.currentRad().blocks())
+				rows[b.location().row()] &= ~(1L << b.location().col());
+		for (int i = 0; i < rows.length; i++)
+			if (rows[i] != 0)
+				return rows.length - i;
+		return 0;
+	}
+
+	// Bytes allocated so far by this thread, or -1 if the JVM can't tell us
+	static long allocatedBytes()
+	{
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean)
+		{
+			com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean)bean;
+			if (sun.isThreadAllocatedMemorySupported())
+				return sun.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+}
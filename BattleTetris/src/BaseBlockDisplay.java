@@ -1,14 +1,40 @@
 import java.awt.Color;
 import java.awt.event.KeyEvent;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.swing.JPanel;
 
 
 abstract public class BaseBlockDisplay implements BlockDisplay
 {
+	/**
+	 * The display Tetris and TetrisControl use for a board: CanvasBlockDisplay, unless the
+	 * tetris.display system property asks for "jpanel" (JPanelBlockDisplay) or "bitmap".
+	 */
+	public static BlockDisplay create(MyBoundedEnv board)
+	{
+		String kind = System.getProperty("tetris.display", "canvas");
+		if (kind.equals("jpanel"))
+			return new JPanelBlockDisplay(board);
+		if (kind.equals("bitmap"))
+			return new BitmapBlockDisplay(board);
+		return new CanvasBlockDisplay(board);
+	}
+
 	protected static final int BLOCKWIDTH=25;
 	protected static final int BLOCKHEIGHT=25;
+
+	// Get the power up icons ready at the sizes blocks draw them (inside a 3 or 2 pixel border)
+	static
+	{
+		ContentManager.preload(BLOCKWIDTH - 6, BLOCKHEIGHT - 6, BLOCKWIDTH - 4, BLOCKHEIGHT - 4);
+	}
 	private ArrowListener listener;
+	private InputQueue input = new InputQueue();
+	private volatile BoardSnapshot latest; // the newest snapshot handed to show()
+	private BoardSnapshot rendered; // the last one drawn (event thread only)
+	private AtomicBoolean dirty = new AtomicBoolean(false); // waiting in RenderScheduler for a frame
+	private volatile long frames = 0; // renders done
 	protected JPanel frame;
 	
 	@Override
@@ -17,95 +43,34 @@ abstract public class BaseBlockDisplay implements BlockDisplay
 		this.listener = listener;
 	}
 	
+	@Override
+	public final void setInputQueue(InputQueue input)
+	{
+		this.input = input;
+	}
+	
+	// Key events are only queued here, on the event thread. The game loop acts on them in processInput().
 	@Override
 	public final void keyPressed(KeyEvent e)
 	{
-		if (listener == null)
-		{
-			return;
-		}
-		
-		try
-		{
-			Thread.sleep(10);
-			switch (e.getKeyCode())
-			{
-			case KeyEvent.VK_LEFT:
-				listener.leftPressed();
-				break;
-			case KeyEvent.VK_RIGHT:
-				listener.rightPressed();
-				break;
-			case KeyEvent.VK_DOWN:
-				listener.downStart();
-				break;
-			case KeyEvent.VK_COMMA:
-				listener.commaPressed();
-				break;
-			case KeyEvent.VK_UP:
-				listener.upPressed();
-				break;
-			case KeyEvent.VK_PERIOD:
-				listener.periodPressed();
-				break;
-			case KeyEvent.VK_SPACE:
-				listener.spacePressed();
-				break;
-			case KeyEvent.VK_ENTER:
-				listener.enterPressed();
-				break;
-			case KeyEvent.VK_P:
-				listener.pPressed();
-				break;
-			case KeyEvent.VK_Q:
-				listener.qPressed();
-				break;
-			case KeyEvent.VK_W:
-				listener.wPressed();
-				break;
-			case KeyEvent.VK_E:
-				listener.ePressed();
-				break;
-			case KeyEvent.VK_S:
-				listener.sStart();
-				break;
-			case KeyEvent.VK_A:
-				listener.aPressed();
-				break;
-			case KeyEvent.VK_D:
-				listener.dPressed();
-				break;
-			}
-		}
-		catch(InterruptedException f)
-		{
-		}
+		input.post(e.getKeyCode(), true);
 	}
 
 	@Override
 	public final void keyReleased(KeyEvent e)
+	{
+		input.post(e.getKeyCode(), false);
+	}
+	
+	@Override
+	public void processInput()
 	{
 		if (listener == null)
 		{
+			while (input.poll() != null); // nobody to act on them
 			return;
 		}
-		
-		try
-		{
-			Thread.sleep(10);
-			switch (e.getKeyCode())
-			{
-			case KeyEvent.VK_DOWN:
-				listener.downEnd();
-				break;
-			case KeyEvent.VK_S:
-				listener.sEnd();
-				break;
-			}
-		}
-		catch(InterruptedException f)
-		{
-		}
+		input.drain(listener);
 	}
 
 	@Override
@@ -114,6 +79,44 @@ abstract public class BaseBlockDisplay implements BlockDisplay
 		// Do nothing
 	}
 
+	// Any thread. However often this is called, RenderScheduler renders the newest snapshot once a frame.
+	@Override
+	public final void show(BoardSnapshot snapshot)
+	{
+		if (snapshot == latest)
+			return; // an unchanged board is published as the same snapshot
+		latest = snapshot;
+		RenderScheduler.shared().requestRender(this);
+	}
+	
+	// True if this display wasn't already waiting for a frame
+	final boolean markDirty()
+	{
+		return dirty.compareAndSet(false, true);
+	}
+	
+	// Event thread, from RenderScheduler. False if there was nothing new to draw.
+	final boolean renderLatest()
+	{
+		dirty.set(false);
+		BoardSnapshot snapshot = latest;
+		if (snapshot == null || snapshot == rendered)
+			return false;
+		rendered = snapshot;
+		render(snapshot);
+		frames++;
+		return true;
+	}
+	
+	// How many times this display has rendered
+	public long frames()
+	{
+		return frames;
+	}
+	
+	/** Draws the snapshot. Always called on the event thread. */
+	protected abstract void render(BoardSnapshot snapshot);
+
 	@Override
 	public final void setLocation(int x, int y)
 	{
@@ -1,6 +1,19 @@
+/** BitmapBlockDisplay.java
+ * 
+ * Draws the board into one TYPE_INT_RGB image shown by a JLabel, with a sprinkle of colored noise
+ * 	over the empty space that changes every frame.
+ * 
+ * 	The image is made once. render() writes into its pixel array (DataBufferInt) directly and
+ * 	only redraws the cells that changed since the last frame, so a frame allocates nothing.
+ * 	The noise is made up front as NOISE_FRAMES frames of 100 specks each. Each frame takes the
+ * 	last frame's specks away and puts the next frame's down, leaving the blocks on top.
+ * 
+ */
+
 import java.awt.Color;
-import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
 import java.util.Random;
 
 import javax.swing.ImageIcon;
@@ -14,6 +27,15 @@ public class BitmapBlockDisplay extends BaseBlockDisplay
 	private JLabel image;
 	private Random rng;
 	
+	private static final int NOISE_FRAMES = 16;
+	private BufferedImage bitmap;
+	private int[] pixels; // bitmap's own pixels
+	private int[] background; // the pixels with no blocks and no noise
+	private int numRows, numCols, width, height;
+	private int[][] noisePixels, noiseColors; // [frame][speck pixel]
+	private int frameNumber;
+	private BoardSnapshot shown; // what the pixels show
+	
 	public BitmapBlockDisplay(MyBoundedEnv board)
 	{
 		rng = new Random();
@@ -56,64 +78,152 @@ public class BitmapBlockDisplay extends BaseBlockDisplay
 
 	@Override
 	public void showBlocks() {
-		int width = board.numCols() * BLOCKWIDTH + 2;
-		int height = board.numRows() * BLOCKHEIGHT + 2;
-		BufferedImage bi = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		show(BoardSnapshot.of(board));
+	}
 
-		Graphics2D graphics = bi.createGraphics();
-		graphics.setColor(Color.gray);
-		graphics.drawRect(0, 0, width - 1, height - 1);
+	@Override
+	protected void render(BoardSnapshot snapshot) {
+		int rows = snapshot.numRows();
+		int cols = snapshot.numCols();
+		if (bitmap == null || rows != numRows || cols != numCols)
+			createBitmap(rows, cols);
 		
-		//System.out.println(board.numRows());
-		//System.out.println(board.numCols());
+		// Take last frame's noise away, except where a block was drawn over it
+		int[] noise = noisePixels[frameNumber % NOISE_FRAMES];
+		for (int i = 0; i < noise.length; i++)
+			if (!covered(shown, noise[i]))
+				pixels[noise[i]] = background[noise[i]];
 		
+		// Redraw the cells that changed
+		for (int row = 0; row < rows; row++)
+			for (int col = 0; col < cols; col++)
+			{
+				if (shown != null && snapshot.cell(row, col) == shown.cell(row, col)
+						&& sameColor(snapshot.color(row, col), shown.color(row, col)))
+					continue;
+				Color color = snapshot.color(row, col);
+				fillCell(row, col, (color == null) ? 0 : blockRGB(color, snapshot.powerType(row, col)));
+			}
+		shown = snapshot;
 		
-		for (int i = 0; i < 100; i++)
+		// This frame's noise, under the blocks
+		frameNumber++;
+		noise = noisePixels[frameNumber % NOISE_FRAMES];
+		int[] colors = noiseColors[frameNumber % NOISE_FRAMES];
+		for (int i = 0; i < noise.length; i++)
+			if (!covered(shown, noise[i]))
+				pixels[noise[i]] = colors[i];
+		
+		image.repaint();
+	}
+	
+	// One image for the life of the display; its pixels are written directly
+	private void createBitmap(int rows, int cols)
+	{
+		numRows = rows;
+		numCols = cols;
+		width = cols * BLOCKWIDTH + 2;
+		height = rows * BLOCKHEIGHT + 2;
+		bitmap = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		pixels = ((DataBufferInt)bitmap.getRaster().getDataBuffer()).getData();
+		
+		// black, with a gray frame
+		background = new int[pixels.length];
+		int gray = Color.gray.getRGB() & 0xFFFFFF;
+		for (int x = 0; x < width; x++)
+		{
+			background[x] = gray;
+			background[(height - 1) * width + x] = gray;
+		}
+		for (int y = 0; y < height; y++)
 		{
-			graphics.setColor(Color.getHSBColor(rng.nextFloat(), rng.nextFloat(), rng.nextFloat()));
-			graphics.drawRect(rng.nextInt(width), rng.nextInt(height), 1, 1);
+			background[y * width] = gray;
+			background[y * width + width - 1] = gray;
 		}
-		for (int row = 0; row < board.numRows(); row++)
+		System.arraycopy(background, 0, pixels, 0, pixels.length);
+		
+		// 100 random 2x2 specks a frame, like drawRect(x, y, 1, 1) in a random HSB color
+		noisePixels = new int[NOISE_FRAMES][];
+		noiseColors = new int[NOISE_FRAMES][];
+		for (int f = 0; f < NOISE_FRAMES; f++)
 		{
-			for (int col = 0; col < board.numCols(); col++)
+			int[] at = new int[100 * 4];
+			int[] rgb = new int[at.length];
+			int n = 0;
+			for (int i = 0; i < 100; i++)
 			{
-				Block block = (Block)board.objectAt(new Location(row, col));
-				if (block == null)
-				{
-					continue;
-				}
-				
-				int x = 1 + col * BLOCKWIDTH;
-				int y = 1 + row * BLOCKHEIGHT;
-				
-				// Set base color
-				switch (block.getPowerType())
-				{
-				case PowerUp.POWERUP_BOMB:
-					graphics.setColor(blendColors(block.color(), Color.black));
-					break;
-				case PowerUp.POWERUP_ANTIBOMB:
-					graphics.setColor(blendColors(block.color(), Color.white));
-					break;
-				case PowerUp.POWERUP_SCRAMBLE:
-					graphics.setColor(Color.orange);
-					break;
-				case PowerUp.POWERUP_REMOVE:
-					graphics.setColor(new Color(80, 0, 0));
-					break;
-				default:
-					graphics.setColor(block.color());
-				}
-				// Draw base block
-				graphics.fillRect(x, y, BLOCKWIDTH, BLOCKWIDTH);
+				int color = Color.HSBtoRGB(rng.nextFloat(), rng.nextFloat(), rng.nextFloat()) & 0xFFFFFF;
+				int x0 = rng.nextInt(width);
+				int y0 = rng.nextInt(height);
+				for (int y = y0; y <= y0 + 1 && y < height; y++)
+					for (int x = x0; x <= x0 + 1 && x < width; x++)
+					{
+						at[n] = y * width + x;
+						rgb[n++] = color;
+					}
 			}
+			noisePixels[f] = Arrays.copyOf(at, n);
+			noiseColors[f] = Arrays.copyOf(rgb, n);
 		}
 		
-		graphics.dispose();
-
-		ImageIcon icon = new ImageIcon(bi);
-		image.setIcon(icon);
+		shown = null;
+		frameNumber = 0;
+		image.setIcon(new ImageIcon(bitmap));
 		image.validate();
 	}
+	
+	private void fillCell(int row, int col, int rgb)
+	{
+		int x0 = 1 + col * BLOCKWIDTH;
+		int y0 = 1 + row * BLOCKHEIGHT;
+		for (int y = y0; y < y0 + BLOCKHEIGHT && y < height; y++)
+			Arrays.fill(pixels, y * width + x0, Math.min(x0 + BLOCKWIDTH, width) + y * width, rgb);
+	}
+	
+	// True if pixel i is inside a block of the snapshot
+	private boolean covered(BoardSnapshot snapshot, int i)
+	{
+		if (snapshot == null)
+			return false;
+		int x = i % width - 1;
+		int y = i / width - 1;
+		if (x < 0 || y < 0)
+			return false;
+		int col = x / BLOCKWIDTH;
+		int row = y / BLOCKHEIGHT;
+		return row < numRows && col < numCols && snapshot.isOccupied(row, col);
+	}
+	
+	private static boolean sameColor(Color a, Color b)
+	{
+		return (a == null) ? b == null : a.equals(b);
+	}
+	
+	// The block's base color, tinted by its power up
+	private static int blockRGB(Color color, int powerType)
+	{
+		switch (powerType)
+		{
+		case PowerUp.POWERUP_BOMB:
+			return blend(color.getRGB(), 0x000000);
+		case PowerUp.POWERUP_ANTIBOMB:
+			return blend(color.getRGB(), 0xFFFFFF);
+		case PowerUp.POWERUP_SCRAMBLE:
+			return Color.orange.getRGB() & 0xFFFFFF;
+		case PowerUp.POWERUP_REMOVE:
+			return (80 << 16);
+		default:
+			return color.getRGB() & 0xFFFFFF;
+		}
+	}
+	
+	// blendColors without the Color
+	private static int blend(int a, int b)
+	{
+		int r = (((a >> 16) & 0xFF) + ((b >> 16) & 0xFF)) / 2;
+		int g = (((a >> 8) & 0xFF) + ((b >> 8) & 0xFF)) / 2;
+		int bl = ((a & 0xFF) + (b & 0xFF)) / 2;
+		return (r << 16) | (g << 8) | bl;
+	}
 
 }
@@ -21,6 +21,10 @@ public class Block implements Locatable
 	private boolean pivot=false;	
 	
 	private int powerup_type = PowerUp.POWERUP_NORMAL;
+
+	// The MyBoundedEnv cell this Block is in (board is null when it's in none). Only MyBoundedEnv sets these.
+	private MyBoundedEnv board = null;
+	private int boardRow, boardCol;
 	
 	public Block(Color colorSet)
 	{
@@ -66,6 +70,24 @@ public class Block implements Locatable
 	{
 		location=newLoc;
 	}
+	MyBoundedEnv board()
+	{
+		return board;
+	}
+	int boardRow()
+	{
+		return boardRow;
+	}
+	int boardCol()
+	{
+		return boardCol;
+	}
+	void setBoardCell(MyBoundedEnv env, int row, int col)
+	{
+		board=env;
+		boardRow=row;
+		boardCol=col;
+	}
 	public static void main(String[] args)
 	{
 		MyBoundedEnv env=new MyBoundedEnv(6,5); //6 rows, 5 cols
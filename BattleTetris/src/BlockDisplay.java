@@ -8,8 +8,11 @@ import javax.swing.JPanel;
 
 public interface BlockDisplay extends KeyListener {
 	public void setArrowListener(ArrowListener listener);
+	public void setInputQueue(InputQueue input); // where key events go until processInput()
+	public void processInput(); // on the game thread: send queued key events to the ArrowListener
 	public void setLocation(int x, int y);
 	public void setTitle(String title);
 	public JPanel getPanel();
-	public void showBlocks();
+	public void showBlocks(); // show the board as it is now
+	public void show(BoardSnapshot snapshot); // draw this snapshot (or a later one) on the event thread
 }
@@ -0,0 +1,160 @@
+import java.awt.Color;
+import java.util.Arrays;
+
+/** BoardSnapshot.java
+ * 
+ * An immutable copy of what a MyBoundedEnv looks like, for drawing on the Swing event thread while
+ * 	the game thread carries on changing the board.
+ * 	Each cell is packed into one int: the Block's color (as an index into palette), whether there
+ * 	is a Block, and the Block's active and pivot flags and power type.
+ * 	The palette is built again for every snapshot, so the same index can be a different color in
+ * 	the next one. Cells of two snapshots only look the same if cell() and color() both match.
+ * 
+ * 	A Builder belongs to the thread that changes the board. build() fills its scratch buffer and
+ * 	only makes a new BoardSnapshot when the board looks different from the previous one, so an
+ * 	unchanged board costs no allocation. Publish the result through a volatile field.
+ * 
+ * Accessors:
+ * 	numRows(), numCols()
+ * 	long version(): goes up by 1 with every new BoardSnapshot from the same Builder
+ * 	int cell(int row, int col): the packed cell (0 if empty). Within one snapshot, equal cells look
+ * 		the same. Across snapshots, compare color() too.
+ * 	boolean isOccupied(row, col), isActive(row, col), isPivot(row, col)
+ * 	int powerType(row, col)
+ * 	Color color(row, col): the Block's color, or null if there is no Block
+ * 
+ */
+
+public final class BoardSnapshot
+{
+	public static final int OCCUPIED = 1 << 8;
+	public static final int ACTIVE = 1 << 9;
+	public static final int PIVOT = 1 << 10;
+	public static final int COLOR_MASK = 0xFF; // the index into this snapshot's palette, not comparable across snapshots
+	public static final int POWER_SHIFT = 11;
+	
+	private final int rows, cols;
+	private final int[] cells; // [row * cols + col]
+	private final Color[] palette;
+	private final long version;
+	
+	private BoardSnapshot(int rows, int cols, int[] cells, Color[] palette, long version)
+	{
+		this.rows = rows;
+		this.cols = cols;
+		this.cells = cells;
+		this.palette = palette;
+		this.version = version;
+	}
+	
+	// A one-off snapshot, e.g. for a display that is asked to showBlocks() directly
+	public static BoardSnapshot of(MyBoundedEnv env)
+	{
+		return new Builder().build(env, null);
+	}
+	
+	public int numRows()
+	{
+		return rows;
+	}
+	public int numCols()
+	{
+		return cols;
+	}
+	public long version()
+	{
+		return version;
+	}
+	
+	public int cell(int row, int col)
+	{
+		return cells[row * cols + col];
+	}
+	public boolean isOccupied(int row, int col)
+	{
+		return (cell(row, col) & OCCUPIED) != 0;
+	}
+	public boolean isActive(int row, int col)
+	{
+		return (cell(row, col) & ACTIVE) != 0;
+	}
+	public boolean isPivot(int row, int col)
+	{
+		return (cell(row, col) & PIVOT) != 0;
+	}
+	public int powerType(int row, int col)
+	{
+		return cell(row, col) >>> POWER_SHIFT;
+	}
+	public Color color(int row, int col)
+	{
+		int c = cell(row, col);
+		if ((c & OCCUPIED) == 0)
+			return null;
+		return palette[c & COLOR_MASK];
+	}
+	
+	/** Reads boards into a reusable buffer. One per board, used only by the game thread. */
+	public static class Builder
+	{
+		private int[] cells = new int[0];
+		private int cols;
+		private Color[] palette = new Color[8];
+		private int colors;
+		
+		// Packs each occupied cell into cells; the empty ones are already 0
+		private final MyBoundedEnv.CellVisitor packer = new MyBoundedEnv.CellVisitor() {
+			public void visit(int row, int col, Locatable a)
+			{
+				Block b = (Block)a;
+				int c = OCCUPIED | colorIndex(b.color()) | (b.getPowerType() << POWER_SHIFT);
+				if (b.active())
+					c |= ACTIVE;
+				if (b.pivot())
+					c |= PIVOT;
+				cells[row * cols + col] = c;
+			}
+		};
+		
+		public BoardSnapshot build(MyBoundedEnv env, BoardSnapshot previous)
+		{
+			int rows = env.numRows();
+			cols = env.numCols();
+			if (cells.length != rows * cols)
+				cells = new int[rows * cols];
+			else
+				Arrays.fill(cells, 0);
+			colors = 0;
+			env.forEachOccupied(packer);
+			
+			if (previous != null && previous.rows == rows && previous.cols == cols
+					&& Arrays.equals(previous.cells, cells) && samePalette(previous.palette))
+				return previous;
+			
+			long version = (previous == null) ? 0 : previous.version + 1;
+			return new BoardSnapshot(rows, cols, cells.clone(), Arrays.copyOf(palette, colors), version);
+		}
+		
+		// Boards only use a handful of colors, so a linear search is quickest
+		private int colorIndex(Color color)
+		{
+			for (int i = 0; i < colors; i++)
+				if (palette[i].equals(color))
+					return i;
+			if (colors == palette.length)
+				palette = Arrays.copyOf(palette, Math.min(colors * 2, COLOR_MASK + 1));
+			palette[colors] = color;
+			return colors++;
+		}
+		
+		private boolean samePalette(Color[] other)
+		{
+			if (other.length != colors)
+				return false;
+			for (int i = 0; i < colors; i++)
+				if (!other[i].equals(palette[i]))
+					return false;
+			return true;
+		}
+	}
+}
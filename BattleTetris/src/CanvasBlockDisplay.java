@@ -0,0 +1,144 @@
+/** CanvasBlockDisplay.java
+ * 
+ * Draws the whole board in one component: a single JPanel whose paintComponent draws every cell,
+ * 	rather than a GridLayout of one DrawImage JPanel per cell like JPanelBlockDisplay.
+ * 	It looks the same: dark gray empty cells; blocks in their color with a darker border (thinner
+ * 	while active, light gray on the pivot) and the power up icon on top; a white frame around it all.
+ * 
+ * 	Every look a block can have is drawn once into a tile image (see tile()), so painting a cell
+ * 	is a single drawImage. render() only asks Swing to repaint the cells that changed, and
+ * 	paintComponent only draws the cells inside the clip.
+ * 
+ * Variables:
+ * 	BoardPanel panel: the one component, also stored as frame
+ * 	BoardSnapshot current: what the panel shows. Only read and written on the event thread.
+ * 	HashMap<Long, BufferedImage> tiles: one tile per color, active/pivot flags and power type,
+ * 										shared by every display (event thread only)
+ * 
+ */
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+
+import javax.swing.BorderFactory;
+import javax.swing.JPanel;
+
+public class CanvasBlockDisplay extends BaseBlockDisplay
+{
+	private static final int EDGE = 2; // the white frame
+	private static HashMap<Long, BufferedImage> tiles = new HashMap<Long, BufferedImage>();
+
+	private MyBoundedEnv board;
+	private BoardPanel panel;
+	private BoardSnapshot current = null;
+
+	public CanvasBlockDisplay(MyBoundedEnv board)
+	{
+		this.board = board;
+		panel = new BoardPanel();
+		panel.setPreferredSize(new Dimension(board.numCols() * BLOCKWIDTH + 2 * EDGE,
+		                                     board.numRows() * BLOCKHEIGHT + 2 * EDGE));
+		panel.setBackground(Color.DARK_GRAY);
+		panel.setOpaque(true);
+		panel.setBorder(BorderFactory.createLineBorder(Color.WHITE, EDGE));
+		panel.addKeyListener(this);
+		frame = panel;
+
+		showBlocks();
+		panel.setVisible(true);
+	}
+
+	public void showBlocks()
+	{
+		show(BoardSnapshot.of(board));
+	}
+
+	protected void render(BoardSnapshot snapshot)
+	{
+		BoardSnapshot old = current;
+		current = snapshot;
+		if (old == null || old.numRows() != snapshot.numRows() || old.numCols() != snapshot.numCols())
+		{
+			panel.repaint();
+			return;
+		}
+		for (int row = 0; row < snapshot.numRows(); row++)
+			for (int col = 0; col < snapshot.numCols(); col++)
+				if (snapshot.cell(row, col) != old.cell(row, col)
+						|| (snapshot.isOccupied(row, col) && !snapshot.color(row, col).equals(old.color(row, col))))
+					panel.repaint(EDGE + col * BLOCKWIDTH, EDGE + row * BLOCKHEIGHT, BLOCKWIDTH, BLOCKHEIGHT);
+	}
+
+	@SuppressWarnings("serial")
+	private class BoardPanel extends JPanel
+	{
+		protected void paintComponent(Graphics g)
+		{
+			super.paintComponent(g); // the dark gray background
+			BoardSnapshot snapshot = current;
+			if (snapshot == null)
+				return;
+
+			Rectangle clip = g.getClipBounds();
+			int firstRow = 0, lastRow = snapshot.numRows() - 1;
+			int firstCol = 0, lastCol = snapshot.numCols() - 1;
+			if (clip != null)
+			{
+				firstRow = Math.max(firstRow, (clip.y - EDGE) / BLOCKHEIGHT);
+				lastRow = Math.min(lastRow, (clip.y + clip.height - EDGE) / BLOCKHEIGHT);
+				firstCol = Math.max(firstCol, (clip.x - EDGE) / BLOCKWIDTH);
+				lastCol = Math.min(lastCol, (clip.x + clip.width - EDGE) / BLOCKWIDTH);
+			}
+
+			for (int row = firstRow; row <= lastRow; row++)
+				for (int col = firstCol; col <= lastCol; col++)
+				{
+					Color color = snapshot.color(row, col);
+					if (color != null)
+						g.drawImage(tile(color, snapshot.cell(row, col)),
+						            EDGE + col * BLOCKWIDTH, EDGE + row * BLOCKHEIGHT, null);
+				}
+		}
+	}
+
+	// A block as JPanelBlockDisplay would draw it: filled, a LineBorder, and the power up icon inside the border
+	private static BufferedImage tile(Color color, int cell)
+	{
+		int flags = cell & ~BoardSnapshot.COLOR_MASK;
+		Long key = ((long)color.getRGB() << 32) | (flags & 0xFFFFFFFFL);
+		BufferedImage tile = tiles.get(key);
+		if (tile != null)
+			return tile;
+
+		Color line = color.darker();
+		int thickness = 3;
+		if ((cell & BoardSnapshot.ACTIVE) != 0)
+		{
+			if ((cell & BoardSnapshot.PIVOT) != 0)
+				line = Color.GRAY.brighter();
+			else
+				thickness = 2;
+		}
+
+		tile = new BufferedImage(BLOCKWIDTH, BLOCKHEIGHT, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = tile.createGraphics();
+		g.setColor(color);
+		g.fillRect(0, 0, BLOCKWIDTH, BLOCKHEIGHT);
+		g.setColor(line);
+		for (int i = 0; i < thickness; i++)
+			g.drawRect(i, i, BLOCKWIDTH - 1 - 2 * i, BLOCKHEIGHT - 1 - 2 * i);
+
+		int powerType = cell >>> BoardSnapshot.POWER_SHIFT;
+		if (powerType != PowerUp.POWERUP_NORMAL)
+		{
+			Image icon = ContentManager.getImage(powerType, BLOCKWIDTH - 2 * thickness, BLOCKHEIGHT - 2 * thickness);
+			if (icon != null)
+				g.drawImage(icon, thickness, thickness, null);
+		}
+		g.dispose();
+
+		tiles.put(key, tile);
+		return tile;
+	}
+}
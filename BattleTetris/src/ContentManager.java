@@ -1,40 +1,91 @@
+import java.awt.Graphics2D;
 import java.awt.Image;
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import javax.imageio.ImageIO;
 
 /**
- * Static content manager for lazy loading of game assets (currently images only).
+ * Static content manager for game assets (currently images only).
+ * Images are decoded once, from the classpath if they are on it and from disk otherwise. preload()
+ * does that in the background at startup, so the first bomb or scramble block doesn't have to.
+ * getImage(i, width, height) hands out an image already scaled to the size it is drawn at: every
+ * size asked for gets one atlas, a strip holding all the power up images at that size. Atlases are
+ * for the block sizes; the welcome image isn't in them, since it is drawn board sized (see DrawImage).
  * @author Alexandre Boulgakov
  */
 public class ContentManager {
-	/** Image cache */
+	/** Most atlases kept at once; only a resized window asks for new sizes */
+	static private final int MAX_ATLASES = 8;
+
+	/** Image cache, guarded by the class lock */
 	static private Image[] images;
-	
+	/** Tried to load image i (it may have failed) */
+	static private boolean[] loaded;
+	/** Scaled images by size ((width << 16) | height), least recently used first */
+	static private LinkedHashMap<Integer, Image[]> atlases;
+	/** preload() has started its thread */
+	static private boolean preloading = false;
+
 	/** This class cannot be instantiated. */
 	private ContentManager() { }
-	
+
 	/** Initializes caches */
 	static
 	{
 		// Initialize image cache
 		images = new Image[PowerUp.NUM_POWERUPS];
+		loaded = new boolean[PowerUp.NUM_POWERUPS];
+		atlases = new LinkedHashMap<Integer, Image[]>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<Integer, Image[]> eldest)
+			{
+				return size() > MAX_ATLASES;
+			}
+		};
+	}
+
+	/**
+	 * Starts decoding every image on a background thread, and building the atlases for the given
+	 * sizes (width, height pairs). Only the first call does anything.
+	 */
+	static public synchronized void preload(final int... sizes)
+	{
+		if (preloading)
+			return;
+		preloading = true;
+
+		Thread thread = new Thread(new Runnable() {
+			public void run()
+			{
+				for (int i = 1; i <= PowerUp.NUM_POWERUPS; i++)
+					getImage(i);
+				for (int s = 0; s + 1 < sizes.length; s += 2)
+					atlas(sizes[s], sizes[s + 1]);
+			}
+		}, "ContentManager preload");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		thread.start();
 	}
-	
+
 	/**
-	 * Returns the image for powerup i.
-	 * This might cause the image to be read from disk if this is the first time it was requested.
+	 * Returns the image for powerup i, at its full size.
+	 * This might cause the image to be read if preload() hasn't gotten to it yet.
 	 */
-	static public Image getImage(int i)
+	static public synchronized Image getImage(int i)
 	{
 		// If the image isn't in the cache, try to load it
-		if (images[i - 1] == null)
+		if (!loaded[i - 1])
 		{
+			loaded[i - 1] = true;
 			try
 			{
-				File file = new File(PowerUp.getImageName(i));
-				Image image = ImageIO.read(file);
-				images[i - 1] = image;
+				images[i - 1] = read(PowerUp.getImageName(i));
 			}
 			catch (IOException _)
 			{
@@ -43,4 +94,54 @@ public class ContentManager {
 		}
 		return images[i - 1];
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Returns the image for powerup i scaled to width x height, to be drawn without scaling it again.
+	 * Null if the image couldn't be read, or for the welcome image, which has to be scaled on its own.
+	 */
+	static public Image getImage(int i, int width, int height)
+	{
+		if (width <= 0 || height <= 0)
+			return null;
+		return atlas(width, height)[i - 1];
+	}
+
+	/** The images at one size, cut out of a single atlas image. Built the first time it's needed. */
+	static private synchronized Image[] atlas(int width, int height)
+	{
+		Integer key = (width << 16) | (height & 0xFFFF);
+		Image[] scaled = atlases.get(key);
+		if (scaled != null)
+			return scaled;
+
+		// One slot per power up, left to right
+		BufferedImage atlas = new BufferedImage(width * PowerUp.NUM_POWERUPS, height, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = atlas.createGraphics();
+		scaled = new Image[PowerUp.NUM_POWERUPS];
+		for (int i = 1; i <= PowerUp.NUM_POWERUPS; i++)
+		{
+			Image image = (i == PowerUp.POWERUP_WELCOME) ? null : getImage(i);
+			if (image == null)
+				continue;
+			g.drawImage(image, (i - 1) * width, 0, width, height, null);
+			scaled[i - 1] = atlas.getSubimage((i - 1) * width, 0, width, height);
+		}
+		g.dispose();
+
+		atlases.put(key, scaled);
+		return scaled;
+	}
+
+	/** Reads the image at path, from the classpath (without the source folder) or else from disk. */
+	static private Image read(String path) throws IOException
+	{
+		if (path.length() == 0)
+			return null;
+
+		String name = path.startsWith("src/") ? path.substring(4) : path;
+		URL url = ContentManager.class.getResource("/" + name);
+		if (url != null)
+			return ImageIO.read(url);
+		return ImageIO.read(new File(path));
+	}
+}
@@ -5,12 +5,15 @@
  */
 
 import java.awt.*;
+import java.awt.image.BufferedImage;
 import javax.swing.*;
 
 @SuppressWarnings("serial")
 public class DrawImage extends JPanel {
 
 	private int current = 0;
+	private Image welcome; // the welcome image scaled to this panel, and the size it was scaled to
+	private int welcomeWidth, welcomeHeight;
 
 	public DrawImage() { }
 	
@@ -28,11 +31,37 @@ public class DrawImage extends JPanel {
 			Dimension d = getSize();
 			// the internal margins of the component
 			Insets i = getInsets();
-			// draw to fill the entire component
-			g.drawImage(ContentManager.getImage(current),
-			            i.left, i.top,
-			            d.width - i.left - i.right, d.height - i.top - i.bottom,
-			            this );
+			// draw to fill the entire component, with the image already scaled to fit it
+			int width = d.width - i.left - i.right;
+			int height = d.height - i.top - i.bottom;
+			Image image;
+			if (current == PowerUp.POWERUP_WELCOME)
+				image = welcome(width, height);
+			else
+				image = ContentManager.getImage(current, width, height);
+			if (image != null)
+				g.drawImage(image, i.left, i.top, this);
 		}
 	}
+
+	// The welcome image is as big as a board, so it is scaled on its own, not into an atlas of block icons
+	private Image welcome(int width, int height)
+	{
+		if (width <= 0 || height <= 0)
+			return null;
+		if (welcome == null || welcomeWidth != width || welcomeHeight != height)
+		{
+			Image full = ContentManager.getImage(PowerUp.POWERUP_WELCOME);
+			if (full == null)
+				return null;
+			BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+			Graphics2D g = scaled.createGraphics();
+			g.drawImage(full, 0, 0, width, height, null);
+			g.dispose();
+			welcome = scaled;
+			welcomeWidth = width;
+			welcomeHeight = height;
+		}
+		return welcome;
+	}
 }
\ No newline at end of file
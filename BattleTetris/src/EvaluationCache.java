@@ -0,0 +1,109 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** EvaluationCache.java
+ * 
+ * A fixed-size table from board hashes (see MyBoundedEnv.hash()) to board weights, so an AI that
+ * 	reaches the same stack twice only computes its weight once. Any number of AIs and threads can
+ * 	share one without locking.
+ * 
+ * 	Each bucket holds 2 entries. A new entry takes the first one and moves the old first entry into
+ * 	the second, so the least recently stored of the two is dropped.
+ * 	An entry is stored as (key ^ data, data). A reader that sees half of a write from another thread
+ * 	gets a mismatched key and treats it as a miss, so no entry ever needs a lock.
+ * 
+ * 	Only share a cache between AIs that weigh boards the same way.
+ * 
+ * Methods:
+ * 	long lookup(long key): the weight stored for key, or MISS
+ * 	void store(long key, int weight)
+ * 	long hits(), misses(), double hitRate(): counted by lookup, for sizing the cache
+ * 	void resetStats(), clear()
+ * 
+ */
+
+public class EvaluationCache
+{
+	public static final long MISS = Long.MIN_VALUE;
+	private static final long PRESENT = 1L << 32; // set in every stored data, so an empty entry never matches
+	
+	private final AtomicLongArray table; // 4 longs per bucket: check0, data0, check1, data1
+	private final int mask; // buckets - 1
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	
+	// Holds at least 'entries' boards (rounded up to a power of 2)
+	public EvaluationCache(int entries)
+	{
+		int buckets = Integer.highestOneBit(Math.max(1, entries / 2 - 1)) << 1;
+		table = new AtomicLongArray(buckets * 4);
+		mask = buckets - 1;
+	}
+	
+	public int capacity()
+	{
+		return (mask + 1) * 2;
+	}
+	
+	public long lookup(long key)
+	{
+		int at = bucket(key);
+		for (int way = 0; way < 2; way++, at += 2)
+		{
+			long data = table.get(at + 1);
+			if (data != 0 && (table.get(at) ^ data) == key)
+			{
+				hits.incrementAndGet();
+				return (int)data;
+			}
+		}
+		misses.incrementAndGet();
+		return MISS;
+	}
+	
+	public void store(long key, int weight)
+	{
+		int at = bucket(key);
+		long data = PRESENT | (weight & 0xFFFFFFFFL);
+		long check0 = table.get(at);
+		long data0 = table.get(at + 1);
+		if (data0 != 0 && (check0 ^ data0) != key) // keep it, unless it's the same board
+		{
+			table.set(at + 2, check0);
+			table.set(at + 3, data0);
+		}
+		table.set(at, key ^ data);
+		table.set(at + 1, data);
+	}
+	
+	private int bucket(long key)
+	{
+		return ((int)(key ^ (key >>> 32)) & mask) * 4;
+	}
+	
+	public long hits()
+	{
+		return hits.get();
+	}
+	public long misses()
+	{
+		return misses.get();
+	}
+	public double hitRate()
+	{
+		long h = hits.get();
+		long total = h + misses.get();
+		return (total == 0) ? 0 : (double)h / total;
+	}
+	public void resetStats()
+	{
+		hits.set(0);
+		misses.set(0);
+	}
+	public void clear()
+	{
+		for (int i = 0; i < table.length(); i++)
+			table.set(i, 0);
+		resetStats();
+	}
+}
@@ -0,0 +1,80 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/** GameRandom.java
+ *
+ * A small, seedable random number generator for everything random in a game: which Tetrads come,
+ * 	their power ups, where the holes in garbage rows go, the scramble power up, and who plays first.
+ * 	It is the splitmix64 generator (the same one java.util.SplittableRandom uses), so the same seed
+ * 	always gives the same numbers, on any JVM.
+ *
+ * 	split() makes a new, independent GameRandom from this one. A match splits one stream per player
+ * 		and per purpose off a single seed (see TetrisMatch and TetrisEngine.setSeed), so the whole
+ * 		match can be played again from that seed, and each stream only depends on its own calls.
+ * 	Not thread safe: each stream belongs to the thread that plays its game. Unlike Math.random(),
+ * 		games on different threads never share (and wait on) one generator.
+ *
+ * Methods:
+ * 	long nextLong()
+ * 	double nextDouble(): in [0, 1), like Math.random()
+ * 	int nextInt(int bound): in [0, bound), the same as (int)(nextDouble() * bound)
+ * 	GameRandom split()
+ * 	static long newSeed(): a different seed every call, for games that don't need to be replayed
+ *
+ */
+
+public class GameRandom
+{
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+	private static final AtomicLong seeds = new AtomicLong(System.nanoTime());
+
+	private long seed;
+	private final long gamma; // odd; each stream steps through seeds by its own gamma
+
+	public GameRandom(long seed)
+	{
+		this(seed, GOLDEN_GAMMA);
+	}
+	private GameRandom(long seed, long gamma)
+	{
+		this.seed = seed;
+		this.gamma = gamma;
+	}
+
+	public static long newSeed()
+	{
+		return mix64(seeds.addAndGet(GOLDEN_GAMMA)) ^ mix64(System.nanoTime());
+	}
+
+	public long nextLong()
+	{
+		return mix64(seed += gamma);
+	}
+	public double nextDouble()
+	{
+		return (nextLong() >>> 11) * 0x1.0p-53;
+	}
+	public int nextInt(int bound)
+	{
+		return (int)(nextDouble() * bound);
+	}
+	public GameRandom split()
+	{
+		return new GameRandom(nextLong(), mixGamma(seed += gamma));
+	}
+
+	private static long mix64(long z)
+	{
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+	// An odd gamma with enough bit flips to step well
+	private static long mixGamma(long z)
+	{
+		z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+		z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+		z = (z ^ (z >>> 33)) | 1L;
+		int n = Long.bitCount(z ^ (z >>> 1));
+		return (n < 24) ? z ^ 0xAAAAAAAAAAAAAAAAL : z;
+	}
+}
@@ -0,0 +1,158 @@
+import java.awt.event.KeyEvent;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/** InputQueue.java
+ * 
+ * Carries key presses from the Swing event thread to the game loop without locks or sleeps.
+ * 	A KeyListener (like BlockDisplay or TetrisControl) only post()s the key code and returns.
+ * 	The game loop drains the queue between ticks, so every ArrowListener method runs on the game
+ * 	thread, in the order the keys were pressed, and never in the middle of a play().
+ * 
+ * Methods:
+ * 	post(int keyCode, boolean pressed): queue a key press (or release)
+ * 	Event poll(): the oldest event, or null
+ * 	clear(): drop everything queued
+ * 	int drain(ArrowListener): dispatch every queued event to the listener
+ * 	await(long nanos): wait until something is posted, or nanos pass. Only the game thread waits.
+ * 	static boolean dispatch(ArrowListener, Event): call the listener method for the key, if any
+ * 
+ */
+
+public class InputQueue
+{
+	public static class Event
+	{
+		public final int keyCode; // KeyEvent.VK_*
+		public final boolean pressed; // false when the key was released
+		
+		public Event(int keyCode, boolean pressed)
+		{
+			this.keyCode = keyCode;
+			this.pressed = pressed;
+		}
+	}
+	
+	private final ConcurrentLinkedQueue<Event> events = new ConcurrentLinkedQueue<Event>();
+	private volatile Thread waiter; // the thread in await(), if any
+	
+	public void post(int keyCode, boolean pressed)
+	{
+		events.offer(new Event(keyCode, pressed));
+		Thread t = waiter;
+		if (t != null)
+			LockSupport.unpark(t);
+	}
+	
+	public Event poll()
+	{
+		return events.poll();
+	}
+	
+	public void clear()
+	{
+		events.clear();
+	}
+	
+	public boolean isEmpty()
+	{
+		return events.isEmpty();
+	}
+	
+	public int drain(ArrowListener listener)
+	{
+		int n = 0;
+		Event e;
+		while ((e = events.poll()) != null)
+		{
+			dispatch(listener, e);
+			n++;
+		}
+		return n;
+	}
+	
+	// waiter is set before the check, so a post() in between still unparks us
+	public void await(long nanos)
+	{
+		long deadline = System.nanoTime() + nanos;
+		Thread self = Thread.currentThread();
+		waiter = self;
+		while (events.isEmpty() && !self.isInterrupted())
+		{
+			long left = deadline - System.nanoTime();
+			if (left <= 0)
+				break;
+			LockSupport.parkNanos(this, left);
+		}
+		waiter = null;
+	}
+	
+	public static boolean dispatch(ArrowListener listener, Event e)
+	{
+		if (!e.pressed)
+		{
+			switch (e.keyCode)
+			{
+			case KeyEvent.VK_DOWN:
+				listener.downEnd();
+				return true;
+			case KeyEvent.VK_S:
+				listener.sEnd();
+				return true;
+			}
+			return false;
+		}
+		
+		switch (e.keyCode)
+		{
+		case KeyEvent.VK_LEFT:
+			listener.leftPressed();
+			break;
+		case KeyEvent.VK_RIGHT:
+			listener.rightPressed();
+			break;
+		case KeyEvent.VK_DOWN:
+			listener.downStart();
+			break;
+		case KeyEvent.VK_COMMA:
+			listener.commaPressed();
+			break;
+		case KeyEvent.VK_UP:
+			listener.upPressed();
+			break;
+		case KeyEvent.VK_PERIOD:
+			listener.periodPressed();
+			break;
+		case KeyEvent.VK_SPACE:
+			listener.spacePressed();
+			break;
+		case KeyEvent.VK_ENTER:
+			listener.enterPressed();
+			break;
+		case KeyEvent.VK_P:
+			listener.pPressed();
+			break;
+		case KeyEvent.VK_Q:
+			listener.qPressed();
+			break;
+		case KeyEvent.VK_W:
+			listener.wPressed();
+			break;
+		case KeyEvent.VK_E:
+			listener.ePressed();
+			break;
+		case KeyEvent.VK_S:
+			listener.sStart();
+			break;
+		case KeyEvent.VK_A:
+			listener.aPressed();
+			break;
+		case KeyEvent.VK_D:
+			listener.dPressed();
+			break;
+		default:
+			return false;
+		}
+		return true;
+	}
+}
@@ -11,6 +11,11 @@
  * 	JPanel[][] grid: a 2D array that maps to the board's Locatables.
  * 						Every block is displayed in its own JPanel
  * 
+ * 	int[][] shown: the packed BoardSnapshot cell each JPanel shows now (-1 = unknown).
+ * 	Color[][] shownColors: ... and its color, since a cell's palette index only means something in
+ * 					its own snapshot. render only touches the cells where either one changed.
+ * 	HashMap<Integer, Border> borders: one shared LineBorder per color and thickness (event thread only)
+ * 
  * 	JFrame frame: Holds all the JPanels. Is the one who sends KeyEvents to BlockDisplay
  * 	boolean special: If this display is meant to hide certain top rows. (Unused currently)
  * 	ArrowListener listener: the listener is asked to perform the relevant action based
@@ -27,6 +32,10 @@
  * 
  * Update GUI:
  * 	showBlocks(): forces the GUI to redraw the blocks on the screen.
+ * 	show(BoardSnapshot): redraws from a snapshot instead. Either way the drawing (render) happens
+ * 		on the event thread, from the newest snapshot it has been given.
+ * 	repaintAll(): forget what is shown, so the next render sets every cell again
+ * 	cellsUpdated(), renders(): how many cells have been changed in how many renders, to measure repaint cost
  * 	setTitle(String): changes the title of the JFrame to be this given String
  * 	setLocation(int x, int y): sets the pixelX, pixelY location of the JFrame window on your monitor
  * 
@@ -44,7 +53,10 @@
  */
 
 import java.awt.*;
+import java.util.Arrays;
+import java.util.HashMap;
 import javax.swing.*;
+import javax.swing.border.Border;
 
 // Used to display the contents of a game board
 public class JPanelBlockDisplay extends BaseBlockDisplay
@@ -54,7 +66,14 @@ public class JPanelBlockDisplay extends BaseBlockDisplay
 
 	private MyBoundedEnv board;
 	private DrawImage[][] grid;
+	private int[][] shown;
+	private Color[][] shownColors;
 	private boolean special;
+	private long cellsUpdated = 0;
+	private long renders = 0;
+
+	private static final Border PIVOT_BORDER = BorderFactory.createLineBorder(Color.GRAY.brighter(),3);
+	private static HashMap<Integer, Border> borders = new HashMap<Integer, Border>();
 
 	// Constructs a new display for displaying the given board
 	public JPanelBlockDisplay(MyBoundedEnv board)
@@ -69,6 +88,9 @@ public class JPanelBlockDisplay extends BaseBlockDisplay
 		frame = new JPanel();
 
 		grid = new DrawImage[board.numRows()][board.numCols()];
+		shown = new int[grid.length][grid[0].length];
+		shownColors = new Color[grid.length][grid[0].length];
+		repaintAll();
 
 		createAndShowGUI();
 
@@ -113,6 +135,8 @@ public class JPanelBlockDisplay extends BaseBlockDisplay
 		//Show the board
 		showBlocks();
 
+		frame.setBorder(BorderFactory.createLineBorder(Color.WHITE,2));
+
 		//Display the window
 		frame.setVisible(true);
 	}
@@ -120,15 +144,28 @@ public class JPanelBlockDisplay extends BaseBlockDisplay
 	//Redraws the board to include the pieces and border colors.
 	public void showBlocks()
 	{
+		show(BoardSnapshot.of(board));
+	}
+
+	protected void render(BoardSnapshot snapshot)
+	{
+		renders++;
 		for (int row = 0; row < grid.length; row++)
 			for (int col = 0; col < grid[row].length; col++)
 			{
-				Location loc=new Location(row,col);
+				int r = row;
 				if(special) //hide 1 row
-					loc = new Location(row+1, col);
+					r = row+1;
+
+				int cell = snapshot.cell(r, col);
+				Color color = snapshot.color(r, col);
+				if (cell == shown[row][col] && (color == null || color.equals(shownColors[row][col])))
+					continue; // looks the same as last time
+				shown[row][col] = cell;
+				shownColors[row][col] = color;
+				cellsUpdated++;
 
-				Block square = (Block)board.objectAt(loc);
-				if (square == null) //use a dark gray background if no block is there.
+				if (!snapshot.isOccupied(r, col)) //use a dark gray background if no block is there.
 				{
 					grid[row][col].setBackground(Color.DARK_GRAY);
 					grid[row][col].setBorder(null);
@@ -136,23 +173,49 @@ public class JPanelBlockDisplay extends BaseBlockDisplay
 				}
 				else // the background is the block's color.
 				{
-					grid[row][col].setBackground(square.color());
-					grid[row][col].setImage(square.getPowerType());
+					grid[row][col].setBackground(color);
+					grid[row][col].setImage(snapshot.powerType(r, col));
 
 					// the block's border varies depending on if it is active and if it is the pivot
-					if(square.active())
+					if(snapshot.isActive(r, col))
 					{
-						if(square.pivot())
-							grid[row][col].setBorder(BorderFactory.createLineBorder(Color.GRAY.brighter(),3));
+						if(snapshot.isPivot(r, col))
+							grid[row][col].setBorder(PIVOT_BORDER);
 						else
-							grid[row][col].setBorder(BorderFactory.createLineBorder(square.color().darker(),2));
+							grid[row][col].setBorder(border(color,2));
 					}
 					else
-						grid[row][col].setBorder(BorderFactory.createLineBorder(square.color().darker(),3));
+						grid[row][col].setBorder(border(color,3));
 
 				}
+				grid[row][col].repaint(); // the image may have changed without the background
 			}
+	}
 
-		frame.setBorder(BorderFactory.createLineBorder(Color.WHITE,2));
+	// A border of the block's darker color. Shared by every display, so only use it on the event thread.
+	private static Border border(Color color, int thickness)
+	{
+		Integer key = (color.getRGB() << 2) ^ thickness;
+		Border border = borders.get(key);
+		if (border == null)
+		{
+			border = BorderFactory.createLineBorder(color.darker(), thickness);
+			borders.put(key, border);
+		}
+		return border;
+	}
+
+	public void repaintAll()
+	{
+		for (int[] row : shown)
+			Arrays.fill(row, -1);
+	}
+	public long cellsUpdated()
+	{
+		return cellsUpdated;
+	}
+	public long renders()
+	{
+		return renders;
 	}
 }
\ No newline at end of file
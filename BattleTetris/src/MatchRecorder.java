@@ -0,0 +1,202 @@
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/** MatchRecorder.java
+ *
+ * Records a TetrisMatch compactly enough to keep every game, so a stall, a top out or a strange
+ * 	power up can be played again exactly, with MatchReplayer. A game is fully decided by its seed
+ * 	(see TetrisMatch(player, opp, seed)) and the commands given to both engines, so that is all
+ * 	that is written down: the seed, then each command with the tick it came in.
+ *
+ * 	The engines report every command themselves (TetrisEngine.setRecorder), whoever gives it:
+ * 	the ArrowListener methods from the keyboard between ticks, and the AI's moves during act().
+ * 	Holding down only matters when act() next looks at it, so a release followed by a press in the
+ * 	same act() (which the AI does every tick while a Tetrad falls) cancels out and isn't written.
+ *
+ * Format: every number is an unsigned varint (7 bits a byte, low bits first).
+ * 	"BTR" 1, the seed, then one varint per command:
+ * 		(ticks since the previous command << 6) | (during a tick << 5) | (side << 4) | command
+ * 	then END, and the check values: ticks, the player's and the opponent's score and board hash.
+ * 	A 10 minute AI vs AI game is a few KB.
+ *
+ * Methods:
+ * 	startTick(), endTick(): TetrisMatch.tick() calls these around each tick
+ * 	command(int side, int command): an engine was given a command
+ * 	finish(TetrisMatch): write the end of the recording; nothing more is recorded after it
+ * 	byte[] toByteArray(), writeTo(OutputStream), writeTo(String file), int size()
+ * 	static apply(TetrisEngine, int command): give an engine a recorded command again
+ *
+ */
+
+public class MatchRecorder
+{
+	public static final int PLAYER = 0;
+	public static final int OPP = 1;
+
+	public static final int LEFT = 0;
+	public static final int RIGHT = 1;
+	public static final int ROTATE = 2;
+	public static final int DOWN = 3;
+	public static final int DOWN_START = 4;
+	public static final int DOWN_END = 5;
+	public static final int SPACE = 6;
+	public static final int PAUSE = 7;
+	public static final int END = 15;
+
+	static final byte[] MAGIC = { 'B', 'T', 'R', 1 };
+
+	private long seed;
+	private byte[] buf = new byte[4096];
+	private int size = 0;
+	private boolean finished = false;
+
+	private int tick = 0; // ticks started so far
+	private boolean inTick = false;
+	private int lastTick = 0; // of the last command written
+	private int[] heldRelease = { -1, -1 }; // per side, the key of a DOWN_END not written yet (or -1)
+
+	public MatchRecorder(long seed)
+	{
+		this.seed = seed;
+		for (int i = 0; i < MAGIC.length; i++)
+			buf[size++] = MAGIC[i];
+		writeVarint(seed);
+	}
+
+	public long seed()
+	{
+		return seed;
+	}
+
+	public void startTick()
+	{
+		inTick = true;
+	}
+	public void endTick()
+	{
+		inTick = false;
+		tick++;
+	}
+
+	public void command(int side, int command)
+	{
+		if (finished)
+			return;
+		int key = ((inTick ? 1 : 0) << 5) | (side << 4) | command;
+
+		// A DOWN_END waits to see if a DOWN_START follows right away, in the same act()
+		if (command == DOWN_START && heldRelease[side] == key(tick, (key & ~15) | DOWN_END))
+		{
+			heldRelease[side] = -1;
+			return;
+		}
+		flush();
+		if (command == DOWN_END)
+			heldRelease[side] = key(tick, key);
+		else
+			write(tick, key);
+	}
+
+	public void finish(TetrisMatch match)
+	{
+		if (finished)
+			return;
+		flush();
+		write(tick, END);
+		writeVarint(tick);
+		writeVarint(match.player().getScore());
+		writeVarint(match.opp().getScore());
+		writeVarint(match.player().board().hash());
+		writeVarint(match.opp().board().hash());
+		finished = true;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+	public byte[] toByteArray()
+	{
+		return Arrays.copyOf(buf, size);
+	}
+	public void writeTo(OutputStream out) throws IOException
+	{
+		out.write(buf, 0, size);
+	}
+	public void writeTo(String file) throws IOException
+	{
+		OutputStream out = new FileOutputStream(file);
+		try
+		{
+			writeTo(out);
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	public static void apply(TetrisEngine engine, int command)
+	{
+		switch (command)
+		{
+			case LEFT:
+				engine.leftPressed();
+				break;
+			case RIGHT:
+				engine.rightPressed();
+				break;
+			case ROTATE:
+				engine.upPressed();
+				break;
+			case DOWN:
+				engine.downPressed();
+				break;
+			case DOWN_START:
+				engine.downStart();
+				break;
+			case DOWN_END:
+				engine.downEnd();
+				break;
+			case SPACE:
+				engine.spacePressed();
+				break;
+			case PAUSE:
+				engine.pPressed();
+				break;
+		}
+	}
+
+	// A held back DOWN_END, as the tick (high bits) and the key it will be written with
+	private static int key(int tick, int key)
+	{
+		return (tick << 6) | key;
+	}
+	private void flush()
+	{
+		for (int side = 0; side < heldRelease.length; side++)
+			if (heldRelease[side] != -1)
+			{
+				write(heldRelease[side] >>> 6, heldRelease[side] & 63);
+				heldRelease[side] = -1;
+			}
+	}
+	private void write(int at, int key)
+	{
+		writeVarint(((long)(at - lastTick) << 6) | key);
+		lastTick = at;
+	}
+	private void writeVarint(long v)
+	{
+		if (size + 10 > buf.length)
+			buf = Arrays.copyOf(buf, buf.length * 2);
+		while ((v & ~0x7FL) != 0)
+		{
+			buf[size++] = (byte)((v & 0x7F) | 0x80);
+			v >>>= 7;
+		}
+		buf[size++] = (byte)v;
+	}
+}
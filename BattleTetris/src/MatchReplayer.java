@@ -0,0 +1,275 @@
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import javax.swing.JFrame;
+import javax.swing.JPanel;
+import java.awt.GridLayout;
+
+/** MatchReplayer.java
+ *
+ * Plays a MatchRecorder recording again on two fresh, headless TetrisEngines, as fast as they go.
+ * 	The match is seeded from the recording, and each side gets a ReplayAI in place of whoever played
+ * 	it. Between ticks the keyboard's commands are given again, and during act() the ReplayAI gives the
+ * 	AI's, so every tick happens exactly as it was recorded. At the end, the ticks, scores and board
+ * 	hashes are checked against the ones in the recording.
+ *
+ * 	replay() runs headless. replay(playerDisplay, oppDisplay) also hands each tick's BoardSnapshots to
+ * 	two BlockDisplays, paced at TetrisMatch.INTERVAL if pace is true, to watch what happened.
+ *
+ * Methods:
+ * 	MatchReplayer(byte[] recording), static MatchReplayer read(String file)
+ * 	TetrisMatch replay(): play the whole recording, then matches() says if it ended the same way
+ * 	TetrisMatch replay(BlockDisplay playerDisplay, BlockDisplay oppDisplay, boolean pace)
+ * 	boolean matches(), String result()
+ *
+ * main(String[] args):
+ * 	MatchReplayer file [show]: replay a recording, and time it (show: watch it in a window)
+ * 	MatchReplayer record file [seed]: record one seeded AI vs AI match into file, then replay it
+ *
+ */
+
+public class MatchReplayer
+{
+	private long seed;
+	private int count = 0; // commands
+	private int[] ticks = new int[256];
+	private int[] keys = new int[256]; // (during a tick << 5) | (side << 4) | command
+	private int endTick;
+	private long[] expected = new long[4]; // player score, opp score, player hash, opp hash
+
+	private TetrisMatch match;
+	private int next; // the next command to give
+	private int tick; // ticks started so far
+	private long[] actual = new long[4];
+
+	public MatchReplayer(byte[] recording)
+	{
+		Reader in = new Reader(recording);
+		for (int i = 0; i < MatchRecorder.MAGIC.length; i++)
+			if (in.next() != MatchRecorder.MAGIC[i])
+				throw new IllegalArgumentException("not a MatchRecorder recording");
+		seed = in.varint();
+
+		int at = 0;
+		while (true)
+		{
+			long v = in.varint();
+			at += (int)(v >>> 6);
+			int key = (int)(v & 63);
+			if (key == MatchRecorder.END)
+				break;
+			if (count == ticks.length)
+			{
+				ticks = Arrays.copyOf(ticks, count * 2);
+				keys = Arrays.copyOf(keys, count * 2);
+			}
+			ticks[count] = at;
+			keys[count++] = key;
+		}
+		endTick = (int)in.varint();
+		for (int i = 0; i < expected.length; i++)
+			expected[i] = in.varint();
+	}
+
+	public static MatchReplayer read(String file) throws IOException
+	{
+		InputStream in = new FileInputStream(file);
+		try
+		{
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] buf = new byte[4096];
+			int n;
+			while ((n = in.read(buf)) > 0)
+				bytes.write(buf, 0, n);
+			return new MatchReplayer(bytes.toByteArray());
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	public int commands()
+	{
+		return count;
+	}
+	public int ticks()
+	{
+		return endTick;
+	}
+
+	public TetrisMatch replay()
+	{
+		return replay(null, null, false);
+	}
+	public TetrisMatch replay(BlockDisplay playerDisplay, BlockDisplay oppDisplay, boolean pace)
+	{
+		TetrisEngine player = new TetrisEngine();
+		TetrisEngine opp = new TetrisEngine();
+		new ReplayAI(player, MatchRecorder.PLAYER);
+		new ReplayAI(opp, MatchRecorder.OPP);
+		match = new TetrisMatch(player, opp, seed);
+		TickScheduler scheduler = pace ? new TickScheduler(TetrisMatch.INTERVAL) : null;
+
+		next = 0;
+		int due = 0;
+		for (tick = 0; tick < endTick; tick++)
+		{
+			if (scheduler != null)
+			{
+				while (due == 0)
+				{
+					try
+					{
+						scheduler.awaitNext();
+					}
+					catch (InterruptedException e)
+					{
+						scheduler = null; // finish as fast as it goes
+						break;
+					}
+					due = scheduler.due();
+				}
+				due--;
+			}
+			give(0, -1);
+			match.tick();
+			if (playerDisplay != null)
+			{
+				player.publish();
+				opp.publish();
+				playerDisplay.show(player.snapshot());
+				oppDisplay.show(opp.snapshot());
+			}
+		}
+		give(0, -1); // anything after the last tick
+
+		actual[0] = player.getScore();
+		actual[1] = opp.getScore();
+		actual[2] = player.board().hash();
+		actual[3] = opp.board().hash();
+		return match;
+	}
+
+	public boolean matches()
+	{
+		return next == count && Arrays.equals(expected, actual);
+	}
+	public String result()
+	{
+		String s = endTick + " ticks, " + count + " commands, score " + actual[0] + "/" + actual[1];
+		if (matches())
+			return s + ", same as recorded";
+		return s + ", recorded " + expected[0] + "/" + expected[1] + " (DIFFERENT, " + (count - next) + " commands left)";
+	}
+
+	// Give the commands due now: between ticks (during == 0) or in side's act() (during == 1)
+	private void give(int during, int side)
+	{
+		while (next < count && ticks[next] == tick && (keys[next] >> 5) == during
+				&& (during == 0 || ((keys[next] >> 4) & 1) == side))
+		{
+			int key = keys[next++];
+			TetrisEngine engine = (((key >> 4) & 1) == MatchRecorder.PLAYER) ? match.player() : match.opp();
+			MatchRecorder.apply(engine, key & 15);
+		}
+	}
+
+	// Stands in for whoever played a side: gives that side's recorded commands during act()
+	private class ReplayAI implements TetrisAI
+	{
+		private int side;
+
+		ReplayAI(TetrisEngine engine, int side)
+		{
+			this.side = side;
+			engine.setAI(this);
+		}
+		public void think() { }
+		public void actuate()
+		{
+			give(1, side);
+		}
+	}
+
+	private static class Reader
+	{
+		private byte[] data;
+		private int at = 0;
+
+		Reader(byte[] data)
+		{
+			this.data = data;
+		}
+		byte next()
+		{
+			if (at >= data.length)
+				throw new IllegalArgumentException("recording ends too soon");
+			return data[at++];
+		}
+		long varint()
+		{
+			long v = 0;
+			for (int shift = 0; ; shift += 7)
+			{
+				byte b = next();
+				v |= (long)(b & 0x7F) << shift;
+				if ((b & 0x80) == 0)
+					return v;
+			}
+		}
+	}
+
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length == 0)
+		{
+			System.out.println("usage: MatchReplayer file [show] | MatchReplayer record file [seed]");
+			return;
+		}
+		if (args[0].equals("record"))
+		{
+			System.setProperty("java.awt.headless", "true");
+			long seed = (args.length > 2) ? Long.parseLong(args[2]) : GameRandom.newSeed();
+			TetrisEngine player = new TetrisEngine();
+			TetrisEngine opp = new TetrisEngine();
+			new TetrisHeuristicAI(player);
+			new TetrisHeuristicAI(opp);
+			TetrisMatch match = new TetrisMatch(player, opp, seed);
+			MatchRecorder recorder = new MatchRecorder(seed);
+			match.setRecorder(recorder);
+			while (!match.isOver())
+				match.tick();
+			recorder.finish(match);
+			recorder.writeTo(args[1]);
+			System.out.println("seed " + seed + ": " + match.elapsed() / 1000 + " s of play in " + recorder.size() + " bytes");
+			args = new String[] { args[1] };
+		}
+
+		MatchReplayer replayer = read(args[0]);
+		if (args.length > 1 && args[1].equals("show"))
+		{
+			BlockDisplay playerDisplay = BaseBlockDisplay.create(new MyBoundedEnv(TetrisEngine.GAME_ROWS, TetrisEngine.GAME_COLS));
+			BlockDisplay oppDisplay = BaseBlockDisplay.create(new MyBoundedEnv(TetrisEngine.GAME_ROWS, TetrisEngine.GAME_COLS));
+			JFrame frame = new JFrame("Replay of " + args[0]);
+			frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+			JPanel p = new JPanel(new GridLayout(1, 2));
+			p.add(oppDisplay.getPanel());
+			p.add(playerDisplay.getPanel());
+			frame.setContentPane(p);
+			frame.pack();
+			frame.setVisible(true);
+			replayer.replay(playerDisplay, oppDisplay, true);
+			System.out.println(replayer.result());
+			return;
+		}
+
+		long begin = System.nanoTime();
+		replayer.replay();
+		double millis = (System.nanoTime() - begin) / 1e6;
+		System.out.println(replayer.result() + ", replayed in " + (int)millis + " ms");
+	}
+}
@@ -2,7 +2,17 @@
  * 
  * A container for a 2D grid of Locatables. (In this case, Blocks)
  * 	Locatable[_ROW_][_COL_] theGrid stores all of the Locatables.
+ * 	long[_ROW_] rowBits is a bitboard of theGrid: bit c of rowBits[r] is set iff theGrid[r][c] != null
+ * 		Kept in sync with theGrid by every mutator, so occupancy checks never touch the Locatables.
+ * 	long[_COL_] colBits is the same bitboard by column: bit r of colBits[c] is set iff theGrid[r][c] != null
+ * 		Column heights and holes come straight from it, so they are always up to date.
  * 	objectCount = number of objects in theGrid. Always updated to remain consistent.
+ * 	Every Block in theGrid knows its own cell (Block.board(), boardRow(), boardCol()), so add() can tell
+ * 		in O(1) if it is already in theGrid. Other Locatables still need a scan of theGrid.
+ * 	long occupancyHash, powerHash: a Zobrist hash of theGrid, updated by every mutator with one xor per cell.
+ * 		occupancyHash xors cellKey(r, c) for each occupied cell. powerHash xors powerKey(type, r, c) for each
+ * 		cell holding a power-up Block, using the type the Block had when it was added (or setPowerType).
+ * 		The keys come from a fixed seed, so the same board hashes the same way in every run.
  * 
  * Useful for finding organizing Locatables without conflict.
  * 
@@ -11,35 +21,102 @@
  * 
  * Constructor:
  * 	MyBoundedEnv(int row, int col): Initialize theGrid to be row x col with objectCount=0.
+ * 									row and col can be at most 64, since a row or column must fit in a long.
  * 
  * Accessors:
  * 	int numRows(): # of rows in theGrid
  * 	int numCols(): # of cols in theGrid
- * 	boolean isValid(Location): True if the location given is inside theGrid
+ * 	boolean isValid(Location), isValid(row, col): True if the location given is inside theGrid
  * 	int numObjects(): returns objectCount
- * 	Locatable[] allObjects(): returns every (non-null) Locatable in theGrid
- * 								{uses notNull helper method, which is written poorly}
+ * 	int duplicateAdds(): # of times add() was given an object that was already in theGrid (and moved it)
+ * 	Locatable[] allObjects(): returns every (non-null) Locatable in theGrid, in row-major order
+ * 	forEachOccupied(CellVisitor): calls visitor.visit(row, col, Locatable) for every occupied cell, in
+ * 								row-major order. Walks the bitboards, so empty cells cost nothing and
+ * 								nothing is allocated. The visitor must not change the board.
  * 
- * 	boolean isEmpty(Location): returns if the loc is valid and if no Locatable is there
- * 	Locatable objectAt(Location): returns the Locatable at the location (or null if nothing)
+ * 	boolean isEmpty(Location), isEmpty(row, col): returns if the loc is valid and if no Locatable is there
+ * 	Locatable objectAt(Location), objectAt(row, col): returns the Locatable at the location (or null if nothing)
+ * 	static Location location(int row, int col): the one shared Location for (row, col), so moving Blocks
+ * 								around doesn't make a new Location every time. (Locations can't change.)
+ * 
+ * Bitboard Accessors:
+ * 	long rowBits(int row): the occupancy mask of the row (bit c set => column c is occupied)
+ * 	long fullRowBits(): the mask of a completely filled row
+ * 	boolean isFullRow(int row): true if every column in the row is occupied (a single compare)
+ * 	boolean collides(int row, long mask): true if the row is out of bounds or shares a bit with mask
+ * 	long columnBits(int col): the occupancy mask of the column (bit r set => row r is occupied)
+ * 
+ * Hashing:
+ * 	long hash(): the Zobrist hash of occupancy and power-up cells
+ * 	long occupancyHash(): only the occupancy part
+ * 	static long cellKey(int row, int col), powerKey(int type, int row, int col): the Zobrist keys
+ * 
+ * Board Features: (each is O(1), except the totals which are O(cols))
+ * 	int rowCount(int row): # of occupied cells in the row
+ * 	int columnHeight(int col): # of rows from the bottom up to and including the column's top block
+ * 	int holes(int col): # of empty cells below the column's top block
+ * 	int totalHoles(): holes summed over every column
+ * 	int stackHeight(): the greatest columnHeight
  * 
  * Mutators:
  * 	add(Locatable): attempt to add to theGrid. If successful, objectCount++
  * 	remove(Locatable): attempt to remove from theGrid. If successful, object--
  * 	recordMove(Locatable, Location): empty the old location and add the Locatable back in.
+ * 	move(Block, int row, int col): take the Block out of its cell and put it in (row, col), replacing whatever is there
  * 	clearAll(): empty theGrid and reset objectCount. (could alternatively make a new grid instead)
+ * 	clearFullRows(): remove every full row and drop the Blocks above down over them, in one pass. Returns # of rows.
+ * 	insertRows(long[], Block[]): push every row up and fill new rows in at the bottom, in one pass.
+ * 	setPowerType(Block, int): change the power type of a Block in theGrid, keeping powerHash current
  * 
  * @author AlexFandrianto
  *
  */
 
+import java.util.Arrays;
+
 public class MyBoundedEnv
 {
 	private Locatable[][] theGrid;
+	private long[] rowBits;
+	private long[] colBits;
+	private long fullRow;
+	private int[][] powerTypes; // the power type each cell was hashed with
+	private long occupancyHash;
+	private long powerHash;
 	private int objectCount;
+	private int duplicateAdds;
+	
+	private static final long[] CELL_KEYS = new long[64 * 64];
+	private static final long[][] POWER_KEYS = new long[PowerUp.NUM_POWERUPS + 1][64 * 64];
+	private static final Location[] LOCATIONS = new Location[64 * 64];
+	static
+	{
+		// splitmix64 from a fixed seed
+		long seed = 0x2011L;
+		for (int i = 0; i < CELL_KEYS.length; i++)
+			CELL_KEYS[i] = mix(seed += 0x9E3779B97F4A7C15L);
+		for (int type = 1; type < POWER_KEYS.length; type++)
+			for (int i = 0; i < POWER_KEYS[type].length; i++)
+				POWER_KEYS[type][i] = mix(seed += 0x9E3779B97F4A7C15L);
+		for (int i = 0; i < LOCATIONS.length; i++)
+			LOCATIONS[i] = new Location(i >> 6, i & 63);
+	}
+	private static long mix(long z)
+	{
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+	
 	public MyBoundedEnv(int row,int col)
 	{
+		if(row>64||col>64)
+			throw new IllegalArgumentException("MyBoundedEnv supports at most 64 x 64, got "+row+" x "+col);
 		theGrid=new Locatable[row][col];
+		rowBits=new long[row];
+		colBits=new long[col];
+		fullRow=(col==64) ? -1L : (1L<<col)-1;
+		powerTypes=new int[row][col];
 		objectCount=0;
 	}
 	public int numRows()
@@ -52,79 +129,206 @@ public class MyBoundedEnv
 	}
 	public boolean isValid(Location loc)
 	{
-		if(0<=loc.row()&&loc.row()<theGrid.length&&0<=loc.col()&&loc.col()<theGrid[0].length)
+		return isValid(loc.row(),loc.col());
+	}
+	public boolean isValid(int row, int col)
+	{
+		if(0<=row&&row<theGrid.length&&0<=col&&col<theGrid[0].length)
 			return true;
 		return false;
 	}
+	public static Location location(int row, int col)
+	{
+		if(0<=row&&row<64&&0<=col&&col<64)
+			return LOCATIONS[(row<<6)|col];
+		return new Location(row,col);
+	}
 	public int numObjects()
 	{
 		return objectCount;
 	}
+	public int duplicateAdds()
+	{
+		return duplicateAdds;
+	}
 	public Locatable[] allObjects()
 	{
-		Locatable[] a=new Locatable[objectCount];
-		for(int row=0;row<theGrid.length;row++)
-		{
-			for(int col=0;col<theGrid[0].length;col++)
+		final Locatable[] a=new Locatable[objectCount];
+		forEachOccupied(new CellVisitor() {
+			private int n=0;
+			public void visit(int row, int col, Locatable obj)
 			{
-				if(theGrid[row][col]!=null)
-					a[notNull(a)]=theGrid[row][col];
+				a[n++]=obj;
 			}
-		}
+		});
 		return a;
 	}
-	private int notNull(Locatable[] a)
+	public void forEachOccupied(CellVisitor visitor)
 	{
-		for(int i=0;i<a.length;i++)
+		for(int row=0;row<theGrid.length;row++)
 		{
-			if(a[i]==null)
-				return i;
+			for(long bits=rowBits[row];bits!=0;bits&=bits-1)
+			{
+				int col=Long.numberOfTrailingZeros(bits);
+				visitor.visit(row,col,theGrid[row][col]);
+			}
 		}
-		return -1;
 	}
 	public boolean isEmpty(Location loc)
 	{
-		if(isValid(loc))
-		{
-			if(theGrid[loc.row()][loc.col()]==null)
-				return true;
-		}
+		return isEmpty(loc.row(),loc.col());
+	}
+	public boolean isEmpty(int row, int col)
+	{
+		if(isValid(row,col))
+			return (rowBits[row]&(1L<<col))==0;
 		return false;
 	}
+	public long rowBits(int row)
+	{
+		return rowBits[row];
+	}
+	public long fullRowBits()
+	{
+		return fullRow;
+	}
+	public boolean isFullRow(int row)
+	{
+		return rowBits[row]==fullRow;
+	}
+	public boolean collides(int row, long mask)
+	{
+		if(row<0||row>=rowBits.length)
+			return true;
+		return (rowBits[row]&mask)!=0;
+	}
+	public long columnBits(int col)
+	{
+		return colBits[col];
+	}
+	public long hash()
+	{
+		return occupancyHash^powerHash;
+	}
+	public long occupancyHash()
+	{
+		return occupancyHash;
+	}
+	public static long cellKey(int row, int col)
+	{
+		return CELL_KEYS[(row<<6)|col];
+	}
+	// 0 for POWERUP_NORMAL (and anything unknown), so a plain Block only changes occupancyHash
+	public static long powerKey(int type, int row, int col)
+	{
+		if(type<=0||type>=POWER_KEYS.length)
+			return 0;
+		return POWER_KEYS[type][(row<<6)|col];
+	}
+	public int rowCount(int row)
+	{
+		return Long.bitCount(rowBits[row]);
+	}
+	public int columnHeight(int col)
+	{
+		if(colBits[col]==0)
+			return 0;
+		return theGrid.length-Long.numberOfTrailingZeros(colBits[col]);
+	}
+	public int holes(int col)
+	{
+		return columnHeight(col)-Long.bitCount(colBits[col]);
+	}
+	public int totalHoles()
+	{
+		int a=0;
+		for(int col=0;col<colBits.length;col++)
+			a+=holes(col);
+		return a;
+	}
+	public int stackHeight()
+	{
+		int a=0;
+		for(int col=0;col<colBits.length;col++)
+			a=Math.max(a,columnHeight(col));
+		return a;
+	}
 	public Locatable objectAt(Location loc)
 	{
-		if(isValid(loc))
-			return theGrid[loc.row()][loc.col()];
+		return objectAt(loc.row(),loc.col());
+	}
+	public Locatable objectAt(int row, int col)
+	{
+		if(isValid(row,col))
+			return theGrid[row][col];
 		return null;
 	}
 	public void add(Locatable a)
 	{
-		for(int row=0;row<theGrid.length;row++)
+		// avoid repeats...
+		if(a instanceof Block)
 		{
-			for(int col=0;col<theGrid[0].length;col++)
-			{
-				if(theGrid[row][col]!=null && theGrid[row][col] == a)
-				{
-					theGrid[row][col] = null; // avoid repeats...
-					System.out.println("needed to remove, already existing");
-				}
-			}
+			Block b=(Block)a;
+			if(b.board()==this)
+				takeOut(b.boardRow(),b.boardCol(),a);
+		}
+		else
+		{
+			for(int row=0;row<theGrid.length;row++)
+				for(int col=0;col<theGrid[0].length;col++)
+					takeOut(row,col,a);
 		}
 		int row=a.location().row();
 		int col=a.location().col();
-		theGrid[row][col]=a;
+		if(theGrid[row][col]!=null)
+		{
+			vacate(row,col); // it's being replaced
+			objectCount--;
+		}
+		occupy(row,col,a);
 		objectCount++;
 	}
+	// Takes a out of theGrid if it's at (row, col), for add(), which is about to put it somewhere
+	private void takeOut(int row, int col, Locatable a)
+	{
+		if(theGrid[row][col]==a)
+		{
+			vacate(row,col);
+			objectCount--;
+			duplicateAdds++;
+		}
+	}
 	public void remove(Locatable obj)
 	{
-		theGrid[obj.location().row()][obj.location().col()]=null;
-		objectCount--;
+		int row=obj.location().row();
+		int col=obj.location().col();
+		if(theGrid[row][col]!=null)
+		{
+			vacate(row,col);
+			objectCount--;
+		}
+	}
+	public void move(Block b, int row, int col)
+	{
+		if(b.board()==this)
+		{
+			vacate(b.boardRow(),b.boardCol());
+			objectCount--;
+		}
+		b.setLocation(location(row,col));
+		if(theGrid[row][col]!=null)
+		{
+			vacate(row,col); // it's being replaced
+			objectCount--;
+		}
+		occupy(row,col,b);
+		objectCount++;
 	}
 	public void recordMove(Locatable obj,Location oldLoc)
 	{
-		if (theGrid[oldLoc.row()][oldLoc.col()] != null)
+		if (theGrid[oldLoc.row()][oldLoc.col()] == obj)
 		{
-			theGrid[oldLoc.row()][oldLoc.col()]=null;
+			vacate(oldLoc.row(),oldLoc.col());
 			objectCount--;
 		}
 		this.add(obj);
@@ -134,11 +338,156 @@ public class MyBoundedEnv
 		objectCount=0;
 		for(int i=0;i<theGrid.length;i++)
 		{
+			for(long bits=rowBits[i];bits!=0;bits&=bits-1)
+				leave(theGrid[i][Long.numberOfTrailingZeros(bits)]);
 			for(int j=0;j<theGrid[0].length;j++)
 			{
 				theGrid[i][j]=null;
+				powerTypes[i][j]=PowerUp.POWERUP_NORMAL;
+			}
+			rowBits[i]=0;
+		}
+		for(int j=0;j<colBits.length;j++)
+			colBits[j]=0;
+		occupancyHash=0;
+		powerHash=0;
+	}
+	public int clearFullRows()
+	{
+		// From the bottom up, each row moves down by the number of full rows found below it so far
+		int cleared=0;
+		for(int row=theGrid.length-1;row>=0;row--)
+		{
+			if(rowBits[row]==fullRow)
+			{
+				for(int col=0;col<theGrid[0].length;col++)
+					vacate(row,col);
+				objectCount-=theGrid[0].length;
+				cleared++;
+			}
+			else if(cleared>0)
+			{
+				for(long bits=rowBits[row];bits!=0;bits&=bits-1)
+				{
+					int col=Long.numberOfTrailingZeros(bits);
+					Locatable a=theGrid[row][col];
+					vacate(row,col);
+					((Block)a).setLocation(location(row+cleared,col));
+					occupy(row+cleared,col,a);
+				}
 			}
 		}
+		return cleared;
+	}
+	// Pushes the board up by rows.length (whatever goes past the top is removed) and fills the new bottom
+	// rows: bit c of rows[i] puts the next Block of blocks at (numRows - rows.length + i, c).
+	// The row arrays themselves are moved, the ones pushed off the top become the new bottom rows.
+	public void insertRows(long[] rows, Block[] blocks)
+	{
+		int n=rows.length;
+		int numRows=theGrid.length;
+		int numCols=theGrid[0].length;
+		if(n==0)
+			return;
+		if(n>numRows)
+			throw new IllegalArgumentException("can't insert "+n+" rows into "+numRows);
+
+		Locatable[][] oldGrid=new Locatable[n][];
+		int[][] oldPowerTypes=new int[n][];
+		for(int row=0;row<n;row++)
+		{
+			objectCount-=Long.bitCount(rowBits[row]);
+			for(long bits=rowBits[row];bits!=0;bits&=bits-1)
+				leave(theGrid[row][Long.numberOfTrailingZeros(bits)]);
+			oldGrid[row]=theGrid[row];
+			oldPowerTypes[row]=powerTypes[row];
+		}
+		System.arraycopy(theGrid,n,theGrid,0,numRows-n);
+		System.arraycopy(powerTypes,n,powerTypes,0,numRows-n);
+		System.arraycopy(rowBits,n,rowBits,0,numRows-n);
+		for(int row=0;row<n;row++)
+		{
+			Arrays.fill(oldGrid[row],null);
+			Arrays.fill(oldPowerTypes[row],PowerUp.POWERUP_NORMAL);
+			theGrid[numRows-n+row]=oldGrid[row];
+			powerTypes[numRows-n+row]=oldPowerTypes[row];
+			rowBits[numRows-n+row]=0;
+		}
+		for(int col=0;col<numCols;col++)
+			colBits[col]>>>=n;
+
+		// Every cell that's left moved, so its Block gets its new Location and the hashes start over
+		occupancyHash=0;
+		powerHash=0;
+		for(int row=0;row<numRows-n;row++)
+		{
+			for(long bits=rowBits[row];bits!=0;bits&=bits-1)
+			{
+				int col=Long.numberOfTrailingZeros(bits);
+				Block b=(Block)theGrid[row][col];
+				b.setLocation(location(row,col));
+				b.setBoardCell(this,row,col);
+				occupancyHash^=cellKey(row,col);
+				powerHash^=powerKey(powerTypes[row][col],row,col);
+			}
+		}
+
+		int next=0;
+		for(int i=0;i<n;i++)
+		{
+			int row=numRows-n+i;
+			for(long bits=rows[i]&fullRow;bits!=0;bits&=bits-1)
+			{
+				int col=Long.numberOfTrailingZeros(bits);
+				Block b=blocks[next++];
+				b.setLocation(location(row,col));
+				occupy(row,col,b);
+				objectCount++;
+			}
+		}
+	}
+	public void setPowerType(Block b, int type)
+	{
+		Location loc=b.location();
+		if(loc!=null&&isValid(loc)&&theGrid[loc.row()][loc.col()]==b)
+		{
+			int row=loc.row();
+			int col=loc.col();
+			powerHash^=powerKey(powerTypes[row][col],row,col)^powerKey(type,row,col);
+			powerTypes[row][col]=type;
+		}
+		b.setPowerType(type);
+	}
+	
+	// The only places theGrid, the bitboards and the hashes change for a single cell
+	private void occupy(int row, int col, Locatable a)
+	{
+		theGrid[row][col]=a;
+		if(a instanceof Block)
+			((Block)a).setBoardCell(this,row,col);
+		rowBits[row]|=1L<<col;
+		colBits[col]|=1L<<row;
+		int type=(a instanceof Block) ? ((Block)a).getPowerType() : PowerUp.POWERUP_NORMAL;
+		powerTypes[row][col]=type;
+		occupancyHash^=cellKey(row,col);
+		powerHash^=powerKey(type,row,col);
+	}
+	private void vacate(int row, int col)
+	{
+		leave(theGrid[row][col]);
+		theGrid[row][col]=null;
+		rowBits[row]&=~(1L<<col);
+		colBits[col]&=~(1L<<row);
+		occupancyHash^=cellKey(row,col);
+		powerHash^=powerKey(powerTypes[row][col],row,col);
+		powerTypes[row][col]=PowerUp.POWERUP_NORMAL;
+	}
+	
+	// a is no longer in theGrid
+	private void leave(Locatable a)
+	{
+		if(a instanceof Block&&((Block)a).board()==this)
+			((Block)a).setBoardCell(null,0,0);
 	}
 	
 	public int[][] intGrid()
@@ -146,10 +495,16 @@ public class MyBoundedEnv
 		int[][] a = new int[theGrid.length][theGrid[0].length];
 		for (int i = 0; i < theGrid.length; i++)
 			for (int j = 0; j < theGrid[0].length; j++)
-				if (theGrid[i][j] != null)
+				if ((rowBits[i] & (1L << j)) != 0)
 					a[i][j] = 1;
 				else
 					a[i][j] = 0;
 		return a;
 	}
+
+	/** What forEachOccupied() calls for each occupied cell. */
+	public interface CellVisitor
+	{
+		void visit(int row, int col, Locatable a);
+	}
 }
\ No newline at end of file
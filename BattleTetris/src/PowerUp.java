@@ -13,14 +13,14 @@ public class PowerUp {
 	
 	public static final int NUM_POWERUPS = 10;
 	
-	private Tetris tetris;
+	private TetrisEngine tetris;
 	private MyBoundedEnv env1;
 	private MyBoundedEnv env2;
 	private int powerUpType;
 	
 	private int roundsStayed = 0;
 	
-	public PowerUp(Tetris tet, MyBoundedEnv env1, MyBoundedEnv env2, int type)
+	public PowerUp(TetrisEngine tet, MyBoundedEnv env1, MyBoundedEnv env2, int type)
 	{
 		tetris = tet;
 		powerUpType = type;
@@ -76,7 +76,7 @@ public class PowerUp {
 				break;
 			case POWERUP_BOMB:				
 			case POWERUP_ANTIBOMB:
-				tetris.setNextRad(new Tetrad(env2, powerUpType));
+				tetris.setNextRad(new Tetrad(env2, powerUpType, tetris.random(TetrisEngine.RANDOM_PIECES)));
 			case POWERUP_SCRAMBLE:
 			case POWERUP_REMOVE:
 			default:
@@ -132,8 +132,7 @@ public class PowerUp {
 		for (int i = row - 1; i <= row+1; i++)
 			for (int j = col - 1; j <= col+1; j++)
 			{
-				Location l = new Location(i, j);
-				Locatable lb = env1.objectAt(l);
+				Locatable lb = env1.objectAt(i, j);
 				if (lb != null)
 				{
 					env1.remove(lb);
@@ -150,11 +149,10 @@ public class PowerUp {
 		for (int i = row - 1; i <= row+1; i++)
 			for (int j = col - 1; j <= col+1; j++)
 			{
-				Location l = new Location(i, j);
-				if (env1.isValid(l) && env1.isEmpty(l))
+				if (env1.isValid(i, j) && env1.isEmpty(i, j))
 				{
 					Block b=new Block(Color.white);
-					b.setLocation(l);
+					b.setLocation(MyBoundedEnv.location(i, j));
 					env1.add(b);
 				}
 			}
@@ -162,16 +160,14 @@ public class PowerUp {
 	
 	private void scramble()
 	{
+		GameRandom random = tetris.random(TetrisEngine.RANDOM_SCRAMBLE);
 		for (int i = 2 * env1.numRows() / 3; i < env1.numRows(); i++)
 			for (int k = env1.numCols() - 1; k > 0; k--)
 			{
-				int j = (int)Math.floor(Math.random() * (k+1));
+				int j = random.nextInt(k+1);
 				
-				Location loc1 = new Location(i, k);
-				Location loc2 = new Location(i, j);
-				
-				Block l1 = (Block)env1.objectAt(loc1);
-				Block l2 = (Block)env1.objectAt(loc2);
+				Block l1 = (Block)env1.objectAt(i, k);
+				Block l2 = (Block)env1.objectAt(i, j);
 				
 				if (l1 != null)
 					env1.remove(l1);
@@ -180,12 +176,12 @@ public class PowerUp {
 				
 				if (l1 != null)
 				{
-					l1.setLocation(loc2);
+					l1.setLocation(MyBoundedEnv.location(i, j));
 					env1.add(l1);
 				}
 				if (l2 != null)
 				{
-					l2.setLocation(loc1);
+					l2.setLocation(MyBoundedEnv.location(i, k));
 					env1.add(l2);
 				}
 			}
@@ -197,8 +193,7 @@ public class PowerUp {
 		for (int i = env1.numRows() - NUM_ROWS_REMOVED; i < env1.numRows(); i++)
 			for (int j = 0; j < env1.numCols(); j++)
 			{
-				Location loc = new Location(i, j);
-				Block b = (Block)env1.objectAt(loc);
+				Block b = (Block)env1.objectAt(i, j);
 				if (b != null)
 					env1.remove(b);
 			}
@@ -206,19 +201,14 @@ public class PowerUp {
 		for(int i = env1.numRows() - NUM_ROWS_REMOVED; i >= 0; i--)
 			for (int j = 0; j < env1.numCols(); j++)
 			{
-				Location loc = new Location(i, j);
-				Location locNew = new Location(i+NUM_ROWS_REMOVED, j);
-				Block b = (Block)env1.objectAt(loc);
+				Block b = (Block)env1.objectAt(i, j);
 				
 				if (b != null)
 				{
-					env1.remove(b);
-				
-					if (env1.isValid(locNew))
-					{
-						b.setLocation(locNew);
-						env1.add(b);
-					}
+					if (env1.isValid(i+NUM_ROWS_REMOVED, j))
+						env1.move(b, i+NUM_ROWS_REMOVED, j);
+					else
+						env1.remove(b);
 				}
 			}
 	}
@@ -0,0 +1,127 @@
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+/** RenderScheduler.java
+ * 
+ * Collects render requests from every display and renders each dirty display once per frame
+ * 	on the event thread, with the newest snapshot it was given. However many times a display is
+ * 	shown a board between frames, it is only drawn once.
+ * 
+ * 	By default a frame is run as soon as the event thread gets to it after the first request,
+ * 	which is once per tick when the game loop publishes once per tick.
+ * 	setFrameRate(fps) instead runs frames on a Swing Timer, at most fps times a second, which also
+ * 	merges the ticks that TickScheduler runs back to back into one frame.
+ * 
+ * Counters (for checking the renderer doesn't do redundant work):
+ * 	requests(): calls to requestRender
+ * 	renders(): display renders actually done
+ * 	frames(): frames that rendered at least one display
+ * 
+ */
+
+public class RenderScheduler
+{
+	private static RenderScheduler shared = new RenderScheduler();
+	
+	private final ConcurrentLinkedQueue<BaseBlockDisplay> dirty = new ConcurrentLinkedQueue<BaseBlockDisplay>();
+	private final AtomicBoolean framePending = new AtomicBoolean(false);
+	private final AtomicLong requests = new AtomicLong();
+	private volatile long renders = 0; // only written on the event thread
+	private volatile long frames = 0;
+	private volatile Timer timer = null; // set when running at a fixed frame rate; requestRender reads it from any thread
+	private ArrayList<BaseBlockDisplay> frameDisplays = new ArrayList<BaseBlockDisplay>(); // event thread only
+	
+	private final Runnable frame = new Runnable()
+	{
+		public void run()
+		{
+			renderFrame();
+		}
+	};
+	
+	// The scheduler every BaseBlockDisplay uses
+	public static RenderScheduler shared()
+	{
+		return shared;
+	}
+	
+	// Any thread
+	public void requestRender(BaseBlockDisplay display)
+	{
+		requests.incrementAndGet();
+		if (display.markDirty())
+			dirty.offer(display);
+		if (timer == null && framePending.compareAndSet(false, true))
+			SwingUtilities.invokeLater(frame);
+	}
+	
+	// Event thread: render every display that asked since the last frame
+	private void renderFrame()
+	{
+		framePending.set(false);
+		// Take the dirty displays first; any that are shown again while rendering wait for the next frame
+		BaseBlockDisplay display;
+		while ((display = dirty.poll()) != null)
+			frameDisplays.add(display);
+		int rendered = 0;
+		for (int i = 0; i < frameDisplays.size(); i++)
+			if (frameDisplays.get(i).renderLatest())
+				rendered++;
+		frameDisplays.clear();
+		if (rendered > 0)
+		{
+			renders += rendered;
+			frames++;
+		}
+	}
+	
+	// 0 or less goes back to a frame per request
+	public synchronized void setFrameRate(int fps)
+	{
+		if (timer != null)
+			timer.stop();
+		if (fps > 0)
+		{
+			Timer next = new Timer(Math.max(1, 1000 / fps), new ActionListener()
+			{
+				public void actionPerformed(ActionEvent e)
+				{
+					renderFrame();
+				}
+			});
+			next.setCoalesce(true);
+			next.start();
+			timer = next; // published only once it is running
+		}
+		else
+		{
+			timer = null;
+			if (!dirty.isEmpty() && framePending.compareAndSet(false, true))
+				SwingUtilities.invokeLater(frame);
+		}
+	}
+	
+	public long requests()
+	{
+		return requests.get();
+	}
+	public long renders()
+	{
+		return renders;
+	}
+	public long frames()
+	{
+		return frames;
+	}
+	public String toString()
+	{
+		return requests() + " render requests, " + renders() + " renders in " + frames() + " frames";
+	}
+}
@@ -6,21 +6,31 @@
  * Variables:
  * 	MyBoundedEnv theirEnv: the environment of the blocks being created.
  * 	Block[] blocks: the (usually 4) blocks being manipulated. Exactly 1 is a pivot block.
+ * 	int shape, orientation: which row of the rotation tables this Tetrad uses, and how many
+ * 		clockwise turns (mod 4) it has made since it was created.
  * 
+ * Rotation Tables:
+ * 	ROW_OFFSETS[shape][orientation][block], COL_OFFSETS[...]: where each block sits relative to the
+ * 		pivot block. Built once from the spawn shapes in setLocation(Color).
+ * 	KICKS: where rotate() tries the turned Tetrad, in order. In place, then 1 left, 1 right, 1 down.
  * 
  * Constructor:
- * 	Tetrad(MyBoundedEnv env): Randomly pick a block color (and thus shape). Add the created blocks
+ * 	Tetrad(MyBoundedEnv env, GameRandom pieces, GameRandom powerUps): Randomly pick a block color (and
+ * 		thus shape) from pieces, and maybe a power up from powerUps. Add the created blocks
  * 		to the MyBoundedEnv. See pickColor() and setLocation(Color)
+ * 	The other constructors take the same streams; see TetrisEngine's random().
  * 
  * Private Helper Methods for Construction:
- * 	Color pickColor(): randomly picks one of 7 colors
+ * 	Color pickColor(GameRandom): randomly picks one of 7 colors
  * 	setLocation(Color): the chosen color determines 1 of 7 Tetris blocks.
  * 						The 0th index block is set to be the pivot block.
  * 						These are NOT added to the environment.
  * 
  * Accessors:
  * 	Block[] blocks(): get the blocks
- * 	boolean areEmpty(Location[]): checks if the env is empty at every Location in the Location[]
+ * 	int orientation(): clockwise turns (mod 4) since it was created
+ * 	boolean fits(int orientation, int row0, int col0): true if the Tetrad could be turned to orientation
+ * 		with its pivot at (row0, col0). Its own blocks don't count as conflicts; the env is not changed.
  * 
  * 
  * Mutators:
@@ -35,11 +45,12 @@
  * 
  * 	boolean rotate(): Attempts to rotate the block clockwise. True if successful
  * 						If this fails, they shift left, right, and down and try rotating again.
+ * 						(a shift only counts if the unturned Tetrad also fits there)
  * 						If this succeeds, true, else false.
  * 		Notes:
- * 			To avoid infinite recursion, rotate2 is used as a helper during this 2nd step.
- * 			private Location[] turnLocs is used to predict where the blocks will go when rotating
- * 						about the pivot block.
+ * 			Every attempt is a table lookup plus fits(); the blocks only move once, if one works.
+ * 			public Location[] turnLocs is used (by the AI) to predict where the blocks will go
+ * 						when rotating about the pivot block.
  * 
  * 
  * @author AlexFandrianto
@@ -52,44 +63,93 @@ public class Tetrad
 {
 	private MyBoundedEnv theirEnv;
 	private Block[] blocks;
+	private int shape;
+	private int orientation = 0;
+	
+	// The shapes of setLocation(Color), in the same order as SPAWN_OFFSETS
+	private static final Color[] SHAPE_COLORS = {Color.red, Color.gray, Color.cyan, Color.yellow,
+		Color.magenta, Color.blue, Color.green, Color.orange, Color.white, Color.black};
+	// {row, col} of each block relative to block 0 (the pivot) as setLocation(Color) places them
+	private static final int[][][] SPAWN_OFFSETS = {
+		{{0,0}, {-1,0}, {1,0}, {2,0}}, // I
+		{{0,0}, {0,-1}, {0,1}, {1,0}}, // T
+		{{0,0}, {-1,0}, {-1,1}, {0,1}}, // O
+		{{0,0}, {-1,0}, {1,0}, {1,1}}, // L
+		{{0,0}, {-1,0}, {1,0}, {1,-1}}, // J
+		{{0,0}, {0,-1}, {-1,0}, {-1,1}}, // S
+		{{0,0}, {0,-1}, {1,0}, {1,1}}, // Z
+		{{0,0}, {-2,0}, {2,0}}, // Spaced out I
+		{{0,0}}, // Anti-Bomb
+		{{0,0}} // Bomb
+	};
+	private static final int[][][] ROW_OFFSETS = new int[SPAWN_OFFSETS.length][4][];
+	private static final int[][][] COL_OFFSETS = new int[SPAWN_OFFSETS.length][4][];
+	private static final int[][] KICKS = {{0,0}, {0,-1}, {0,1}, {1,0}};
+	
+	static
+	{
+		// A clockwise turn about the pivot takes offset (row, col) to (col, -row). See turnLocs.
+		for (int s = 0; s < SPAWN_OFFSETS.length; s++)
+		{
+			int n = SPAWN_OFFSETS[s].length;
+			for (int o = 0; o < 4; o++)
+			{
+				ROW_OFFSETS[s][o] = new int[n];
+				COL_OFFSETS[s][o] = new int[n];
+				for (int b = 0; b < n; b++)
+				{
+					if (o == 0)
+					{
+						ROW_OFFSETS[s][o][b] = SPAWN_OFFSETS[s][b][0];
+						COL_OFFSETS[s][o][b] = SPAWN_OFFSETS[s][b][1];
+					}
+					else
+					{
+						ROW_OFFSETS[s][o][b] = COL_OFFSETS[s][o-1][b];
+						COL_OFFSETS[s][o][b] = -ROW_OFFSETS[s][o-1][b];
+					}
+				}
+			}
+		}
+	}
 	
 	public static final double POWERUP_CHANCE = 0.25;
 	
-	public Tetrad(MyBoundedEnv their)
+	public Tetrad(MyBoundedEnv their, GameRandom pieces, GameRandom powerUps)
 	{
-		Color a=pickColor();
+		Color a=pickColor(pieces);
 		this.setLocation(a);
 		theirEnv=their;
 		
-		randomizePowerUp();
+		randomizePowerUp(powerUps);
 		
 	}
 	
 	// Deal a Tetrad fairly; do not give a O, S, or Z piece
-	public Tetrad(MyBoundedEnv their, boolean TGM)
+	public Tetrad(MyBoundedEnv their, boolean TGM, GameRandom pieces, GameRandom powerUps)
 	{
 		Color a = Color.CYAN;
 		while (a==Color.cyan || a==Color.green || a==Color.blue)
-			a = pickColor();
+			a = pickColor(pieces);
 		this.setLocation(a);
 		theirEnv=their;
 		
-		randomizePowerUp();
+		randomizePowerUp(powerUps);
 		
 	}
 	// Deal a Tetrad fairly; try once to not repeat the oldRad's color
-	public Tetrad(MyBoundedEnv their, Tetrad oldRad)
+	public Tetrad(MyBoundedEnv their, Tetrad oldRad, GameRandom pieces, GameRandom powerUps)
 	{
-		Color a = pickColor();
-		if (oldRad != null && oldRad.blocks()[0].color() == a && Math.random() < .5)
-			a = pickColor();
+		Color a = pickColor(pieces);
+		if (oldRad != null && oldRad.blocks()[0].color() == a && pieces.nextDouble() < .5)
+			a = pickColor(pieces);
 		this.setLocation(a);
 		theirEnv=their;
 		
-		randomizePowerUp();
+		randomizePowerUp(powerUps);
 		
 	}
-	public Tetrad(MyBoundedEnv their, int pwrType)
+	public Tetrad(MyBoundedEnv their, int pwrType, GameRandom pieces)
 	{
 		if (pwrType == PowerUp.POWERUP_BOMB)
 			this.setLocation(Color.black);
@@ -97,7 +157,7 @@ public class Tetrad
 			this.setLocation(Color.white);
 		else
 		{
-			Color a=pickColor();
+			Color a=pickColor(pieces);
 			this.setLocation(a);
 		}
 		blocks[0].setPowerType(pwrType);
@@ -109,12 +169,12 @@ public class Tetrad
 		return this;
 	}
 	
-	private void randomizePowerUp()
+	private void randomizePowerUp(GameRandom random)
 	{
-		if (Math.random() < POWERUP_CHANCE)
+		if (random.nextDouble() < POWERUP_CHANCE)
 		{
-			int blockNum = (int)(Math.random() * 4);
-			double d = Math.random();
+			int blockNum = random.nextInt(4);
+			double d = random.nextDouble();
 			if (d < .35)
 				blocks[blockNum].setPowerType(PowerUp.POWERUP_BOMB);
 			else if (d < .7)
@@ -126,9 +186,9 @@ public class Tetrad
 		}
 	}
 	
-	private Color pickColor()
+	private Color pickColor(GameRandom random)
 	{
-		int a=(int)(Math.random()*7)+1;
+		int a=random.nextInt(7)+1;
 		if(a==1)
 			return Color.red;
 		if(a==2)
@@ -159,10 +219,10 @@ public class Tetrad
 		blocks[1]=new Block(a);
 		blocks[2]=new Block(a);
 		blocks[3]=new Block(a);
-			blocks[1].setLocation(new Location(0,4));
-			blocks[0].setLocation(new Location(1,4));
-			blocks[2].setLocation(new Location(2,4));
-			blocks[3].setLocation(new Location(3,4));
+			blocks[1].setLocation(MyBoundedEnv.location(0,4));
+			blocks[0].setLocation(MyBoundedEnv.location(1,4));
+			blocks[2].setLocation(MyBoundedEnv.location(2,4));
+			blocks[3].setLocation(MyBoundedEnv.location(3,4));
 		}
 		if(a==Color.gray)//T
 		{
@@ -171,10 +231,10 @@ public class Tetrad
 		blocks[1]=new Block(a);
 		blocks[2]=new Block(a);
 		blocks[3]=new Block(a);
-			blocks[1].setLocation(new Location(0,3));
-			blocks[0].setLocation(new Location(0,4));
-			blocks[2].setLocation(new Location(0,5));
-			blocks[3].setLocation(new Location(1,4));
+			blocks[1].setLocation(MyBoundedEnv.location(0,3));
+			blocks[0].setLocation(MyBoundedEnv.location(0,4));
+			blocks[2].setLocation(MyBoundedEnv.location(0,5));
+			blocks[3].setLocation(MyBoundedEnv.location(1,4));
 		}
 		if(a==Color.cyan)//O
 		{
@@ -183,10 +243,10 @@ public class Tetrad
 		blocks[1]=new Block(a);
 		blocks[2]=new Block(a);
 		blocks[3]=new Block(a);
-			blocks[1].setLocation(new Location(0,4));
-			blocks[0].setLocation(new Location(1,4));
-			blocks[2].setLocation(new Location(0,5));
-			blocks[3].setLocation(new Location(1,5));
+			blocks[1].setLocation(MyBoundedEnv.location(0,4));
+			blocks[0].setLocation(MyBoundedEnv.location(1,4));
+			blocks[2].setLocation(MyBoundedEnv.location(0,5));
+			blocks[3].setLocation(MyBoundedEnv.location(1,5));
 		}
 		if(a==Color.yellow)//L
 		{
@@ -195,10 +255,10 @@ public class Tetrad
 		blocks[1]=new Block(a);
 		blocks[2]=new Block(a);
 		blocks[3]=new Block(a);
-			blocks[1].setLocation(new Location(0,4));
-			blocks[0].setLocation(new Location(1,4));
-			blocks[2].setLocation(new Location(2,4));
-			blocks[3].setLocation(new Location(2,5));
+			blocks[1].setLocation(MyBoundedEnv.location(0,4));
+			blocks[0].setLocation(MyBoundedEnv.location(1,4));
+			blocks[2].setLocation(MyBoundedEnv.location(2,4));
+			blocks[3].setLocation(MyBoundedEnv.location(2,5));
 		}
 		if(a==Color.magenta)//J
 		{
@@ -207,10 +267,10 @@ public class Tetrad
 		blocks[1]=new Block(a);
 		blocks[2]=new Block(a);
 		blocks[3]=new Block(a);
-			blocks[1].setLocation(new Location(0,5));
-			blocks[0].setLocation(new Location(1,5));
-			blocks[2].setLocation(new Location(2,5));
-			blocks[3].setLocation(new Location(2,4));
+			blocks[1].setLocation(MyBoundedEnv.location(0,5));
+			blocks[0].setLocation(MyBoundedEnv.location(1,5));
+			blocks[2].setLocation(MyBoundedEnv.location(2,5));
+			blocks[3].setLocation(MyBoundedEnv.location(2,4));
 		}
 		if(a==Color.blue)//S
 		{
@@ -219,10 +279,10 @@ public class Tetrad
 		blocks[1]=new Block(a);
 		blocks[2]=new Block(a);
 		blocks[3]=new Block(a);
-			blocks[1].setLocation(new Location(1,3));
-			blocks[0].setLocation(new Location(1,4));
-			blocks[2].setLocation(new Location(0,4));
-			blocks[3].setLocation(new Location(0,5));
+			blocks[1].setLocation(MyBoundedEnv.location(1,3));
+			blocks[0].setLocation(MyBoundedEnv.location(1,4));
+			blocks[2].setLocation(MyBoundedEnv.location(0,4));
+			blocks[3].setLocation(MyBoundedEnv.location(0,5));
 		}
 		if(a==Color.green)//Z
 		{
@@ -231,10 +291,10 @@ public class Tetrad
 		blocks[1]=new Block(a);
 		blocks[2]=new Block(a);
 		blocks[3]=new Block(a);
-			blocks[1].setLocation(new Location(0,3));
-			blocks[0].setLocation(new Location(0,4));
-			blocks[2].setLocation(new Location(1,4));
-			blocks[3].setLocation(new Location(1,5));
+			blocks[1].setLocation(MyBoundedEnv.location(0,3));
+			blocks[0].setLocation(MyBoundedEnv.location(0,4));
+			blocks[2].setLocation(MyBoundedEnv.location(1,4));
+			blocks[3].setLocation(MyBoundedEnv.location(1,5));
 		}
 		if(a==Color.orange)//Spaced out I
 		{
@@ -242,24 +302,27 @@ public class Tetrad
 		blocks[0]=new Block(a);
 		blocks[1]=new Block(a);
 		blocks[2]=new Block(a);
-			blocks[1].setLocation(new Location(0,4));
-			blocks[0].setLocation(new Location(2,4));
-			blocks[2].setLocation(new Location(4,4));
+			blocks[1].setLocation(MyBoundedEnv.location(0,4));
+			blocks[0].setLocation(MyBoundedEnv.location(2,4));
+			blocks[2].setLocation(MyBoundedEnv.location(4,4));
 		}
 		if(a==Color.white)//Anti-Bomb
 		{
 			blocks=new Block[1];
 		blocks[0]=new Block(a);
-			blocks[0].setLocation(new Location(0,4));
+			blocks[0].setLocation(MyBoundedEnv.location(0,4));
 		}
 		if(a==Color.black)//Bomb
 		{
 			blocks=new Block[1];
 		blocks[0]=new Block(a);
-			blocks[0].setLocation(new Location(0,4));
+			blocks[0].setLocation(MyBoundedEnv.location(0,4));
 		}
 
 		blocks[0].setPivot();
+		for(int i=0;i<SHAPE_COLORS.length;i++)
+			if(SHAPE_COLORS[i]==a)
+				shape=i;
 	}
 	public void activate()
 	{
@@ -270,6 +333,15 @@ public class Tetrad
 	{
 		return blocks;
 	}
+	public int orientation()
+	{
+		return orientation;
+	}
+	// Only for putting back a saved Tetrad: the blocks' locations have to be put back too
+	void setOrientation(int orient)
+	{
+		orientation=orient;
+	}
 	public void addToLocations(Location[] locs)
 	{
 		for(int i=0;i<locs.length;i++)
@@ -288,32 +360,71 @@ public class Tetrad
 		}
 		return a;
 	}
-	private boolean areEmpty(Location[] locs)
+	// True if (row, col) is where one of this Tetrad's own blocks is right now
+	private boolean isOwnCell(int row, int col)
 	{
-		boolean a=true;
-		for(int i=0;i<locs.length;i++)
+		for(int i=0;i<blocks.length;i++)
 		{
-			if(!theirEnv.isEmpty(locs[i]))
-				a=false;
+			Location loc=blocks[i].location();
+			if(loc.row()==row&&loc.col()==col)
+				return true;
 		}
-		return a;
+		return false;
 	}
-	public boolean translate(int deltaRow, int deltaCol)
+	private boolean isFree(int row, int col)
 	{
-		Location[] a=removeBlocks();
-		Location[] b=new Location[a.length];
-		for(int i=0;i<b.length;i++)
+		if(col<0||col>=theirEnv.numCols())
+			return false;
+		return !theirEnv.collides(row,1L<<col)||isOwnCell(row,col);
+	}
+	public boolean fits(int orient, int row0, int col0)
+	{
+		int[] rows=ROW_OFFSETS[shape][orient];
+		int[] cols=COL_OFFSETS[shape][orient];
+		for(int i=0;i<blocks.length;i++)
 		{
-			b[i]=new Location(a[i].row()+deltaRow,a[i].col()+deltaCol);
+			if(!isFree(row0+rows[i],col0+cols[i]))
+				return false;
 		}
-
-		if(areEmpty(b))
+		return true;
+	}
+	private boolean fitsShifted(int deltaRow, int deltaCol)
+	{
+		for(int i=0;i<blocks.length;i++)
 		{
-			addToLocations(b);
-			return true;
+			Location loc=blocks[i].location();
+			if(!isFree(loc.row()+deltaRow,loc.col()+deltaCol))
+				return false;
 		}
-		addToLocations(a);
-		return false;
+		return true;
+	}
+	// Move the blocks to orient with the pivot at (row0, col0). Only call this once fits() said yes.
+	private void place(int orient, int row0, int col0)
+	{
+		int[] rows=ROW_OFFSETS[shape][orient];
+		int[] cols=COL_OFFSETS[shape][orient];
+		for(int i=0;i<blocks.length;i++)
+			theirEnv.remove(blocks[i]);
+		for(int i=0;i<blocks.length;i++)
+		{
+			blocks[i].setLocation(MyBoundedEnv.location(row0+rows[i],col0+cols[i]));
+			theirEnv.add(blocks[i]);
+		}
+		orientation=orient;
+	}
+	public boolean translate(int deltaRow, int deltaCol)
+	{
+		if(!fitsShifted(deltaRow,deltaCol))
+			return false;
+		for(int i=0;i<blocks.length;i++)
+			theirEnv.remove(blocks[i]);
+		for(int i=0;i<blocks.length;i++)
+		{
+			Location loc=blocks[i].location();
+			blocks[i].setLocation(MyBoundedEnv.location(loc.row()+deltaRow,loc.col()+deltaCol));
+			theirEnv.add(blocks[i]);
+		}
+		return true;
 	}
 	public boolean moveDown()
 	{
@@ -331,7 +442,7 @@ public class Tetrad
 		{
 			for(int i=0;i<b.length;i++)
 			{
-				b[i]=new Location(row0-col0+a[i].col(),row0+col0-a[i].row());
+				b[i]=MyBoundedEnv.location(row0-col0+a[i].col(),row0+col0-a[i].row());
 			}
 			return b;
 		}
@@ -339,68 +450,29 @@ public class Tetrad
 		{
 			for(int i=0;i<b.length;i++)
 			{
-				b[i]=new Location(row0-a[i].col()+col0,col0-row0+a[i].row());
+				b[i]=MyBoundedEnv.location(row0-a[i].col()+col0,col0-row0+a[i].row());
 			}
 			return b;
 		}
 	}
 	public boolean rotate()
 	{
+		int next=(orientation+1)%4;
 		int row0=blocks[0].location().row();
 		int col0=blocks[0].location().col();
-		Location[] a=removeBlocks();
-		Location[] b=turnLocs(true, a, row0, col0); /*new Location[a.length];
-		for(int i=0;i<b.length;i++)
-		{
-			b[i]=new Location(row0-col0+a[i].col(),row0+col0-a[i].row());
-		}*/
-		if(areEmpty(b))
+		for(int k=0;k<KICKS.length;k++)
 		{
-			addToLocations(b);
-			return true;
-		}
-		else
-		{
-			addToLocations(a);
-			if (translate(0, -1))
-				if (rotate2())
-					return true;
-				else
-					translate(0, 1);
-
-			if (translate(0, 1))
-				if (rotate2())
-					return true;
-				else
-					translate(0,-1);
-			
-			if (translate(1, 0))
-				if (rotate2())
-					return true;
-				else
-					translate(-1,0);
-			
-		}
-
-		addToLocations(a);
-		return false;
-	}
-	private boolean rotate2()
-	{
-		int row0=blocks[0].location().row();
-		int col0=blocks[0].location().col();
-		Location[] a=removeBlocks();
-		Location[] b=turnLocs(true, a, row0, col0); /*new Location[a.length];
-		for(int i=0;i<b.length;i++)
-		{
-			b[i]=new Location(row0-col0+a[i].col(),row0+col0-a[i].row());
-		}*/
-		if(areEmpty(b))
-		{
-			addToLocations(b);
-			return true;
+			int dRow=KICKS[k][0];
+			int dCol=KICKS[k][1];
+			// a kick has to be a legal move on its own before the turn is tried there
+			if(k>0&&!fitsShifted(dRow,dCol))
+				continue;
+			if(fits(next,row0+dRow,col0+dCol))
+			{
+				place(next,row0+dRow,col0+dCol);
+				return true;
+			}
 		}
-		addToLocations(a);
 		return false;
 	}
 
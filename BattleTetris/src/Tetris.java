@@ -1,4 +1,9 @@
 /** Tetris.java
+ * 
+ * The Swing front end of a Tetris board. The rules live in TetrisEngine; Tetris adds the window,
+ * 	the two BlockDisplays and the title bar.
+ * 	The displays never read the boards. Each publish() hands them the engine's latest BoardSnapshots,
+ * 	and they draw those on the event thread whenever it gets to them.
  * 
  * Variables:
  * 	MyBoundedEnv env, env2
@@ -33,6 +38,10 @@
  * 	while(!notLost())
  * 		play();
  * 
+ * 	(Only when running on its own. Inside TetrisControl, TetrisMatch decides when to play().)
+ * 	Between each play(), wait 1000 - level * 10 ms, or longer while paused.
+ * 		Keys pressed meanwhile are handled as they arrive, on this thread (see InputQueue).
+ * 
  * 	notLost() just checks if rowsMoved is negative or not.
  * 		rowsMoved is only set to a negative number upon losing; when a new Tetrad overlaps
  * 			with other pieces on the board.
@@ -61,44 +70,21 @@
  * 
  */
 
-import java.awt.*;
-
 import javax.swing.BorderFactory;
 import javax.swing.BoxLayout;
 import javax.swing.JFrame;
 import javax.swing.JPanel;
 
 // Used to display the contents of a game board
-public class Tetris implements ArrowListener
+public class Tetris extends TetrisEngine
 {
-	private MyBoundedEnv env;
 	private BlockDisplay display;
-	private Tetrad rad;
-
-	private MyBoundedEnv env2;
 	private BlockDisplay display2;
-	private Tetrad rad2;
+	private InputQueue input = new InputQueue();
 
-	private int score;
-	private int level;
-	private int[] stats = new int[5]; // num 1's, 2's, 3's, 4's, and rowsSent
-	private int rowsMoved;
-	private boolean paused;
 	private JFrame frame;
 	private JPanel panel;
 
-	private boolean[] arrows; // 0 is up, 1 is left, 2 is right, 3 is down
-
-	public static int GAME_ROWS = 22;
-	public static int GAME_COLS = 10;
-
-	private int pendingRows = 0;
-
-	private Tetris opp = null;
-	public TetrisAI ai = null;
-
-	private PowerUp currentPowerUp = null;
-	
 	public static void main(String[] args)
 	{
 		new Tetris();
@@ -112,14 +98,8 @@ public class Tetris implements ArrowListener
 	
 	public Tetris(boolean runLater)
 	{
-		arrows = new boolean[4];
-		for (int i = 0; i < arrows.length; i++)
-			arrows[i] = false;
-
-		env=new MyBoundedEnv(GAME_ROWS,GAME_COLS);
-		display=new JPanelBlockDisplay(env);
-		env2=new MyBoundedEnv(4,GAME_COLS);
-		display2=new JPanelBlockDisplay(env2);
+		display=BaseBlockDisplay.create(board());
+		display2=BaseBlockDisplay.create(previewBoard());
 
 		JPanel p = new JPanel();
 		p.setLayout(new BoxLayout(p, BoxLayout.PAGE_AXIS));
@@ -138,25 +118,29 @@ public class Tetris implements ArrowListener
 			frame.setVisible(true);
 		}
 
-		score=0;
-		level=1;
-		frame.setTitle("Tetris! Level: "+level+" Score: "+score);
+		statusChanged("");
 		display.setArrowListener(this);
-		rad2=new Tetrad(env2, true);
-		newTetrad();
-		display.showBlocks();
-		rowsMoved=1;
+		display.setInputQueue(input);
+		publish();
 		
-		paused = !runLater;
+		setPaused(!runLater);
 
 		if (!runLater)
 		{
 			while(notLost())
 			{
+				long next=System.nanoTime()+(1000-getLevel()*10)*1000000L;
+				while(isPaused()||System.nanoTime()<next)
+				{
+					input.await(isPaused() ? 1000000000L : next-System.nanoTime());
+					processInput();
+					publish();
+				}
 				play();
+				publish();
 			}
-			rad=null;
-			frame.setTitle("Tetris! Level: "+level+" Score: "+score+" Game Over!");
+			nullRad();
+			statusChanged(" Game Over!");
 		}
 	}
 
@@ -164,495 +148,23 @@ public class Tetris implements ArrowListener
 	{
 		return panel;
 	}
-	public int getLevel()
+	// Act on the keys pressed since the last call. Only from the thread that calls play().
+	public void processInput()
 	{
-		return level;
-	}
-	public int getScore()
-	{
-		return score;
-	}
-	public void printStats(String prepend)
-	{
-		System.out.println(prepend + " Level: " + level);
-		System.out.println(prepend + " Score: " + score);
-		System.out.println(prepend + " Singles: " + stats[0]);
-		System.out.println(prepend + " Doubles: " + stats[1]);
-		System.out.println(prepend + " Triples: " + stats[2]);
-		System.out.println(prepend + " Tetrises: " + stats[3]);
-		System.out.println(prepend + " Rows Sent: " + stats[4]);
+		display.processInput();
 	}
 
-	public void setAI(TetrisAI ai)
-	{
-		this.ai = ai;
-	}
-	public MyBoundedEnv board()
+	public void publish()
 	{
-		return env;
+		super.publish();
+		display.show(snapshot());
+		display2.show(previewSnapshot());
 	}
-	public Tetrad currentRad()
+	// The engine's hooks are called from its constructor, before the frame exists.
+	protected void statusChanged(String status)
 	{
-		return rad;
-	}
-	public Tetrad nextRad()
-	{
-		return rad2;
-	}
-	public void setNextRad(Tetrad newRad)
-	{
-		rad2 = newRad;
-	}
-
-	public void setOpponent(Tetris other)
-	{
-		opp = other;
-	}
-	public void increasePendingRows(int num)
-	{
-		pendingRows += num;
-	}
-	public void resetPendingRows()
-	{
-		pendingRows = 0;
-	}
-	public void addPendingRows()
-	{
-		if (pendingRows == 0)
-			return;
-		// First move every block on the board up by 'pendingRows'
-		// Obviously if some go negative y index you've just got to remove them.
-		// Fill the remainder with grayish blocks excluding 1 block per row (at random)
-
-		for (int i = 0; i < env.numRows(); i++)
-		{
-			for (int j = 0; j < env.numCols(); j++)
-			{
-				Block a = (Block)env.objectAt(new Location(i, j));
-				if (a != null)
-				{
-					env.remove(a);
-
-					if (i >= pendingRows)
-					{
-						((Block)a).setLocation(new Location(i-pendingRows,j));
-						env.recordMove(a,new Location(i-pendingRows,j));
-					}
-				}
-			}
-		}
-
-		for (int i = env.numRows() - pendingRows; i < env.numRows(); i++)
-		{
-			int exclude = (int)(Math.random()*env.numCols());
-			int alsoExclude = -1;
-
-			if (Math.random() < .25)
-				alsoExclude = (int)(Math.random()*env.numCols());
-			for (int j = 0; j < env.numCols(); j++)
-			{
-				if (j != exclude && j != alsoExclude)
-				{
-					Location a = new Location(i, j);
-					Block b = new Block(Color.BLACK);
-					b.setLocation(a);
-					env.add(b);
-				}
-			}
-		}
-
-		// added the rows, so we're done
-		resetPendingRows();
-
-	}
-	public PowerUp setCurrentPowerUp(int powerType)
-	{
-		if (currentPowerUp == null) // to avoid conflicts
-		{
-			currentPowerUp = new PowerUp(this, env, env2, powerType);
-			return currentPowerUp;
-		}
-		return null;
-	}
-
-	public boolean notLost()
-	{
-		if(rowsMoved!=-1)
-			return true;
-		frame.setTitle("Tetris! Level: "+level+" Score: "+score+" Game Over!");
-		return false;
-	}
-	public void restart()
-	{
-		env.clearAll();
-		env2.clearAll();
-		rad = null;
-		rad2=new Tetrad(env2, true);
-		rowsMoved = 0;
-		level = 1;
-		score = 0;
-		stats = new int[5];
-		newTetrad();
-		display.showBlocks();
-		display2.showBlocks();
-
-		currentPowerUp = null;
-		pendingRows = 0;
-	}
-
-	public boolean newTetrad()
-	{
-		if (rad != null)
-			rad.activate();
-		Tetrad oldRad = rad;
-
-		rad=rad2.changeEnv(env); // oh dear what if I press down right now?! Then overlap => premature gameover
-
-		rad.activate();
-
-		env2.clearAll();
-		display2.showBlocks();
-		rad2=new Tetrad(env2, oldRad);
-		Locatable[] b=rad2.blocks();
-		for(int i=0;i<b.length;i++)
-		{
-			env2.add(b[i]);
-		}
-		display2.showBlocks();
-		boolean c=true;
-		Locatable[] a=rad.blocks();
-		for(int i=0;i<a.length;i++)
-		{
-			if(env.isEmpty(a[i].location()))
-				env.add(a[i]);
-			else
-				c=false;
-		}
-		return c;
-	}
-	
-	
-	public void leftPressed()
-	{
-		if(rad!=null&&rad.translate(0,-1))
-			display.showBlocks();
-	}
-	public void rightPressed()
-	{
-		if(rad!=null&&rad.translate(0,1))
-			display.showBlocks();
-	}
-	public void upPressed()
-	{
-		if(rad!=null&&rad.rotate())
-			display.showBlocks();
-	}
-	public void downEnd()
-	{
-		arrows[3] = false;
-	}
-
-	public void downStart()
-	{
-		arrows[3] = true;
-		if (opp == null)
-			downPressed();
-	}
-	public void downPressed()
-	{
-		if(rad!=null)
-		{
-		if(rad.translate(1,0))
-		{
-			display.showBlocks();
-			rowsMoved++;
-			score+=level;
-			if(score-(level*level*100)>0)
-				increaseLevel();
-		}
-		}
-	}
-	public void pPressed()
-	{
-		paused=!paused;
-		if(paused)
-			frame.setTitle("Tetris! Level: "+level+" Score: "+score+" Paused!");
-		else
-			frame.setTitle("Tetris! Level: "+level+" Score: "+score+" Resuming...");
-	}
-	public void spacePressed()
-	{
-		if(rad.blocks()[0].color()==Color.black)
-		{
-			blowUp();
-			boolean a=newTetrad();
-			display.showBlocks();
-			frame.setTitle("Tetris! Level: "+level+" Score: "+score+" Kaboom!");
-			if(!a)
-			{
-				frame.setTitle("Tetris! Level: "+level+" Score: "+score+" Game Over!");
-				rowsMoved=-10;
-			}
-		}
-		if(rad.blocks()[0].color()==Color.white)
-		{
-			blowDown();
-			display.showBlocks();
-			clearCompletedRows();
-			boolean a=newTetrad();
-			display.showBlocks();
-			frame.setTitle("Tetris! Level: "+level+" Score: "+score+" Pop!");
-			if(!a)
-			{
-				frame.setTitle("Tetris! Level: "+level+" Score: "+score+" Game Over!");
-				rowsMoved=-10;
-			}
-		}
-	}	
-	public void qPressed() { }
-	public void ePressed() { }
-	public void sStart() { }
-	public void sEnd() { }
-	public void periodPressed() { }
-	public void commaPressed() { }
-	public void enterPressed() { }
-	public void wPressed() { }
-	public void sPressed() { }
-	public void aPressed() { }
-	public void dPressed() { }
-	
-	
-	public void nullRad()
-	{
-		rad=null;
-	}
-	// moves the arrows
-	public void act()
-	{
-		if (arrows[3])
-			downPressed();
-
-		if (ai != null)
-		{
-			ai.think();
-			ai.actuate();
-		}
-		display.showBlocks();
-	}
-	public void play()
-	{
-		try
-		{
-			if (opp == null)
-			{
-				Thread.sleep(1000-level*10);
-				while(paused)
-					Thread.sleep(1000);//1000 milliseconds
-			}
-			display.showBlocks();
-			if(rad.moveDown())
-			{
-				display.showBlocks();
-				rowsMoved++;
-			}
-			else
-			{
-				if (currentPowerUp != null && currentPowerUp.expiring())
-					currentPowerUp.afterAction();
-
-				if (currentPowerUp != null && !currentPowerUp.expiring())
-					currentPowerUp.increaseTime();
-				else
-					currentPowerUp = null;
-				clearCompletedRows();
-				display.showBlocks();
-
-
-				addPendingRows();
-
-				rowsMoved=0;
-				downEnd();
-
-				if (currentPowerUp != null)
-					currentPowerUp.beforeAction();
-
-				display.showBlocks();
-				boolean a=newTetrad();
-				if(!a)
-				{
-					frame.setTitle("Tetris! Level: "+level+" Score: "+score+" Game Over!");
-					rowsMoved=-1;
-				}
-				display.showBlocks();
-				score+=5*level;
-				if(score-(level*level*1000)>0)
-					increaseLevel();
-				frame.setTitle("Tetris! Level: "+level+" Score: "+score);
-			}
-		}
-		catch(InterruptedException e)
-		{
-			//ignore this blank space
-		}
-	}
-	private void blowUp()
-	{
-		Block a=rad.blocks()[0];
-		Location loc=a.location();
-		int row=loc.row();
-		int col=loc.col();
-		for (int i = row - 1; i <= row+1; i++)
-		{
-			for (int j = col - 1; j <= col+1; j++)
-			{
-				Location l = new Location(i, j);
-				Locatable lb = env.objectAt(l);
-				if (lb != null)
-				{
-					env.remove(lb);
-					score+=level*5;
-				}
-			}
-		}
-		display.showBlocks();
-		frame.setTitle("Tetris! Level: "+level+" Score: "+score);
-	}
-	private void blowDown()
-	{
-		Block a=rad.blocks()[0];
-		Location loc=a.location();
-		int row=loc.row();
-		int col=loc.col();
-		for (int i = row - 1; i <= row+1; i++)
-		{
-			for (int j = col - 1; j <= col+1; j++)
-			{
-				Location l = new Location(i, j);
-				if (env.isValid(l) && env.isEmpty(l))
-				{
-					Block b=new Block(Color.white);
-					b.setLocation(l);
-					env.add(b);
-					score+=level*5;
-				}
-			}
-		}
-		display.showBlocks();
-		frame.setTitle("Tetris! Level: "+level+" Score: "+score);
-	}
-	private boolean isCompletedRow(int row)
-	{
-		int a=0;
-		int col=env.numCols();
-		for(int j=0;j<col;j++)
-		{
-			if(!env.isEmpty(new Location(row,j)))
-				a++;
-		}
-		if(a==col)
-			return true;
-		return false;
-	}
-	private int clearRow(int row)
-	{
-		int powerUp = 0;
-		for(int i=0;i<env.numCols();i++)
-		{
-			Block b = (Block)env.objectAt(new Location(row,i));
-			if (powerUp == 0)
-				powerUp = b.getPowerType();
-			env.remove(b);
-		}
-		for(int row2=row;row2>=0;row2--)
-		{
-			for(int i=0;i<env.numCols();i++)
-			{
-				Locatable a=env.objectAt(new Location(row2,i));
-				if(a!=null)
-				{
-					env.remove(a);
-					((Block)a).setLocation(new Location(row2+1,i));
-					env.recordMove(a,new Location(row2+1,i));
-				}
-			}
-		}
-
-		return powerUp;
-	}
-	public void clearCompletedRows()
-	{
-		int a=0;
-		for(int i=0;i<env.numRows();i++)
-		{
-			if(isCompletedRow(i))
-			{
-				int powerType = clearRow(i);
-				if (powerType != PowerUp.POWERUP_NORMAL)
-				{
-					if (PowerUp.mineOrOpp(powerType))
-					{
-						setCurrentPowerUp(powerType);
-						currentPowerUp.changeRad();
-					}
-					else
-					{
-						if (opp != null)
-						{
-							PowerUp p = opp.setCurrentPowerUp(powerType);
-							if (p != null)
-								p.changeRad();
-						}
-					}
-				}
-
-				a++;
-			}
-			for (int j = 0; j < env.numCols();j++)
-			{
-				Block b = (Block)env.objectAt(new Location(i, j));
-				if (b != null)
-					b.setPowerType(PowerUp.POWERUP_NORMAL);
-			}
-		}
-		if(a==1)
-		{
-			score+=40*level;
-			stats[0]++;
-		}
-		if(a==2)
-		{
-			score+=100*level;
-			stats[1]++;
-		}
-		if(a==3)
-		{
-			score+=300*level;
-			stats[2]++;
-		}
-		if(a==4)
-		{
-			score+=1200*level;
-			stats[3]++;
-		}
-		while(score-(level*level*100)>0)
-			increaseLevel();
-		frame.setTitle("Tetris! Level: "+level+" Score: "+score);
-
-		// Penalize opponent!
-		if (opp != null && a > 1)
-		{
-			opp.increasePendingRows(a - 1);
-			stats[4]+=a-1;
-		}
-	}
-	public void increaseLevel()
-	{
-		level++;
-		if (opp != null && level % 4 == 0)
-		{
-			opp.increasePendingRows(1);
-			stats[4]++;
-		}
+		if (frame != null)
+			frame.setTitle("Tetris! Level: "+getLevel()+" Score: "+getScore()+status);
 	}
 
 	public void setLocationEnvTop(int x,int y)
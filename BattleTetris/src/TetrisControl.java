@@ -1,7 +1,10 @@
 /** TetrisControl.java
  * 
  * TetrisControl sets up two subordinate Tetris instances, setting them as opponents.
- * TetrisControl handles the timing and synchronization of the Tetris games using INTERVAL.
+ * TetrisControl handles the timing and synchronization of the Tetris games using TetrisMatch.INTERVAL,
+ * 	by ticking a TetrisMatch (which holds the headless rules) once every INTERVAL of real time.
+ * 	A TickScheduler keeps the ticks on a fixed nanoTime schedule, so the time spent in each tick
+ * 	doesn't slow the game down; missed ticks are caught up on.
  * 	Every factor * INTERVAL milliseconds, both Tetris instances are asked to 'play()'
  * 	Every INTERVAL milliseconds, the Tetris instances, are asked to 'act()' instead based on
  * 		keyboard input. (Like the (s or) down button being held)
@@ -11,11 +14,20 @@
  *			Upon starting, the game loops forever until one side loses.
  *			Each loop calls play()
  *
- *		play(): Pauses for an INTERVAL before calling act() on each Tetris.
- *				After factor (where factor is a constant between 5 to 10) * INTERVAL ms,
- *					play() is called on each Tetris instance in a random (fair) order.
+ *		play(): Ticks the TetrisMatch as many times as are due and then waits for the next tick.
+ *				Key presses are queued by the event thread (see InputQueue) and acted on here,
+ *					between ticks, as soon as they arrive.
+ *				After each, both boards publish() a BoardSnapshot for their displays to draw.
+ *				RenderScheduler draws each display at most once per frame (-Dtetris.fps caps the rate).
+ *				The match calls act() on each Tetris, except every factor
+ *					(where factor is a constant between 5 to 10) * INTERVAL ms,
+ *					when play() is called on each Tetris instance in a random (fair) order.
  *				Factor is reduced from 10 to 5 gradually as time passes, to speed up gameplay.
  *
+ *	Recording: with -Dtetris.record=prefix, each game is recorded (see MatchRecorder) and written to
+ *		prefix1.btr, prefix2.btr, ... when it ends. MatchReplayer plays them again. Each recorded
+ *		game gets its own seed (the first one -Dtetris.seed, if it is given).
+ *
  *	TetrisControl's main:
  *		resets the game every 10 seconds, by pausing and calling restart() and run()
  *
@@ -27,6 +39,7 @@
 import java.awt.*;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
+import java.io.IOException;
 
 import javax.swing.JFrame;
 import javax.swing.JPanel;
@@ -34,15 +47,17 @@ import javax.swing.JPanel;
 // Used to display the contents of a game board
 public class TetrisControl implements ArrowListener, KeyListener
 {
-	public static int INTERVAL = 50; // ms
-
 	private ArrowListener listener = this;
 
 	private Tetris player;
 	private Tetris opp;
+	private TetrisMatch match;
+	private TickScheduler scheduler = new TickScheduler(TetrisMatch.INTERVAL);
+	private InputQueue input = new InputQueue(); // key events from the event thread
 	private BlockDisplay play;
 	private boolean paused;
-	private int startTime=0;
+	private MatchRecorder recorder;
+	private int round = 0;
 
 	private JFrame frame;
 
@@ -92,12 +107,14 @@ public class TetrisControl implements ArrowListener, KeyListener
 		player=new Tetris(true);
 		player.setLocationEnvTop(800,0);
 		player.setLocationEnvBottom(800,160);
-		player.setOpponent(opp);
-		opp.setOpponent(player);
+		Long seed = Long.getLong("tetris.seed"); // -Dtetris.seed plays the same pieces and garbage every time
+		match=(seed != null) ? new TetrisMatch(player, opp, seed) : new TetrisMatch(player, opp);
+		RenderScheduler.shared().setFrameRate(Integer.getInteger("tetris.fps", 0)); // 0: a frame per tick
 
 
-		play=new JPanelBlockDisplay(env);
+		play=BaseBlockDisplay.create(env);
 		play.setArrowListener(this);
+		play.setInputQueue(input);
 
 		frame = new JFrame();
 		frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -162,10 +179,23 @@ public class TetrisControl implements ArrowListener, KeyListener
 	}
 	public void run()
 	{
+		String record = System.getProperty("tetris.record");
+		if (record != null)
+		{
+			Long seed = (round == 0) ? Long.getLong("tetris.seed") : null;
+			long s = (seed != null) ? seed : GameRandom.newSeed();
+			match.restart(s);
+			recorder = new MatchRecorder(s);
+			match.setRecorder(recorder);
+		}
+		round++;
+
 		paused=true;
 		player.pPressed();
 		opp.pPressed();
-		startTime=0;
+		match.resetClock();
+		scheduler.resetStats();
+		input.clear(); // keys pressed between games
 		boolean pNotLost=true;
 		boolean oNotLost=true;
 
@@ -181,6 +211,20 @@ public class TetrisControl implements ArrowListener, KeyListener
 				oNotLost=opp.notLost();
 			}
 		}
+		if (recorder != null)
+		{
+			match.setRecorder(null);
+			recorder.finish(match);
+			try
+			{
+				recorder.writeTo(record + round + ".btr");
+			}
+			catch (IOException e)
+			{
+				System.out.println("Couldn't write " + record + round + ".btr: " + e);
+			}
+			recorder = null;
+		}
 		String a;
 		if(!pNotLost)
 		{
@@ -200,73 +244,49 @@ public class TetrisControl implements ArrowListener, KeyListener
 		System.out.println("***Player Statistics***");
 		opp.printStats("Left side player");
 		player.printStats("Right side player");
-		System.out.println("Time spent: "+startTime/1000+" seconds");
+		System.out.println("Time spent: "+match.elapsed()/1000+" seconds");
+		System.out.println("Timing: "+scheduler);
+		System.out.println("Rendering: "+RenderScheduler.shared());
 	}
 	public void play()
 	{
-		try
+		if(paused)
 		{
-			if(paused)
-			{
-				Thread.sleep(1000);
-			}
-			else
-			{
-				int timeWait=INTERVAL;
-
-				// As time passes, the game goes faster.
-				int factor = 10;
-				if(startTime>=60000)
-					factor=9;
-				if(startTime>=120000)
-					factor=8;
-				if(startTime>=180000)
-					factor=7;
-				if(startTime>=240000)
-					factor=6;
-				if(startTime>=300000)
-					factor=5;
-
-
-
-				// the Tetris board only moves every 'factor' INTERVALs of time.
-				if (startTime % (factor * INTERVAL) == 0)
-				{
-					if(Math.random()>.5)//for fairness
-					{
-						player.play();
-						opp.play();
-					}
-					else
-					{
-						opp.play();
-						player.play();
-					}
-				}
-				else
-				{
-					player.act();
-					opp.act();
-				}
+			input.await(1000000000L);
+			processInput();
+		}
+		else
+		{
+			processInput();
+			int due = scheduler.due();
+			for (int i = 0; i < due; i++)
+				match.tick();
+			if (due > 0)
 				update();
+			publish();
 
-				Thread.sleep(timeWait);
-				startTime+=timeWait;
+			// handle keys as they come in until the next tick is due
+			long wait;
+			while (!paused && (wait = scheduler.nanosToNext()) > 0)
+			{
+				input.await(wait);
+				processInput();
+				publish();
 			}
 		}
-		catch(InterruptedException e)
-		{
-		}
+	}
+
+	// Hand both boards to their displays, as they are between ticks
+	private void publish()
+	{
+		player.publish();
+		opp.publish();
 	}
 
 	/* Reset the game boards */
 	public void restart()
 	{
-		player.setOpponent(opp);
-		opp.setOpponent(player);
-		player.restart();
-		opp.restart();
-		startTime=0;
+		match.restart();
 	}
 
 
@@ -303,6 +323,8 @@ public class TetrisControl implements ArrowListener, KeyListener
 	public void pPressed()
 	{
 		paused=!paused;
+		if(!paused)
+			scheduler.reset(); // don't catch up on the time spent paused
 		update();
 		player.pPressed();
 		opp.pPressed();
@@ -366,107 +388,46 @@ public class TetrisControl implements ArrowListener, KeyListener
 			opp.downStart();
 	}
 
+	// Key events are only queued here, on the event thread. play() acts on them in processInput().
 	@Override
 	public final void keyPressed(KeyEvent e)
 	{
-		if (listener == null)
-		{
-			return;
-		}
+		input.post(e.getKeyCode(), true);
+	}
 
-		try
+	@Override
+	public final void keyReleased(KeyEvent e)
+	{
+		input.post(e.getKeyCode(), false);
+	}
+
+	// Act on the keys pressed since the last call, on the game thread, between ticks
+	public void processInput()
+	{
+		InputQueue.Event e;
+		while ((e = input.poll()) != null)
 		{
-			Thread.sleep(10);
-			switch (e.getKeyCode())
+			if (listener == null)
+				continue;
+			if (e.pressed && e.keyCode == KeyEvent.VK_I)
 			{
-			case KeyEvent.VK_LEFT:
-				listener.leftPressed();
-				break;
-			case KeyEvent.VK_RIGHT:
-				listener.rightPressed();
-				break;
-			case KeyEvent.VK_DOWN:
-				listener.downStart();
-				break;
-			case KeyEvent.VK_COMMA:
-				listener.commaPressed();
-				break;
-			case KeyEvent.VK_UP:
-				listener.upPressed();
-				break;
-			case KeyEvent.VK_PERIOD:
-				listener.periodPressed();
-				break;
-			case KeyEvent.VK_SPACE:
-				listener.spacePressed();
-				break;
-			case KeyEvent.VK_ENTER:
-				listener.enterPressed();
-				break;
-			case KeyEvent.VK_I:
 				if (opp.ai == null)
 					opp.ai = new TetrisHeuristicAI(opp);
 				else
 					opp.ai = null;
-				break;
-			case KeyEvent.VK_O:
+			}
+			else if (e.pressed && e.keyCode == KeyEvent.VK_O)
+			{
 				if (player.ai == null)
 					player.ai = new TetrisHeuristicAI(player);
 				else
 					player.ai = null;
-				break;
-			case KeyEvent.VK_P:
-				listener.pPressed();
-				break;
-			case KeyEvent.VK_Q:
-				listener.qPressed();
-				break;
-			case KeyEvent.VK_W:
-				listener.wPressed();
-				break;
-			case KeyEvent.VK_E:
-				listener.ePressed();
-				break;
-			case KeyEvent.VK_S:
-				listener.sStart();
-				break;
-			case KeyEvent.VK_A:
-				listener.aPressed();
-				break;
-			case KeyEvent.VK_D:
-				listener.dPressed();
-				break;
-			}
-		}
-		catch(InterruptedException f)
-		{
-		}
-	}
-
-	@Override
-	public final void keyReleased(KeyEvent e)
-	{
-		if (listener == null)
-		{
-			return;
-		}
-
-		try
-		{
-			Thread.sleep(10);
-			switch (e.getKeyCode())
-			{
-			case KeyEvent.VK_DOWN:
-				listener.downEnd();
-				break;
-			case KeyEvent.VK_S:
-				listener.sEnd();
-				break;
 			}
+			else
+				InputQueue.dispatch(listener, e);
 		}
-		catch(InterruptedException f)
-		{
-		}
+		player.processInput();
+		opp.processInput();
 	}
 
 	@Override
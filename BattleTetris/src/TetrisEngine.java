@@ -0,0 +1,629 @@
+/** TetrisEngine.java
+ * 
+ * The rules of a single Tetris board, with no Swing attached so that it can run headless
+ * 	(java.awt.headless=true) and many times per JVM. Tetris extends it with a window.
+ * 
+ * Variables:
+ * 	MyBoundedEnv env, env2
+ * 		env stores the entire board's state.
+ * 		env2 stores the upcoming Tetrad
+ * 	Tetrad rad, rad2
+ * 		rad is the currently active Tetrad.
+ * 		rad2 is the upcoming Tetrad
+ * 	int score, level, stats[], rowsMoved, pendingRows, paused
+ * 		See Tetris.java for what each of these mean.
+ * 
+ * Front end hook:
+ * 	statusChanged(String status): level, score or game status changed.
+ * 		status is "" or a note such as " Paused!" or " Game Over!"
+ * 	The engine's hook does nothing, so a bare TetrisEngine never touches the screen.
+ * 
+ * Snapshots:
+ * 	publish(): at the end of a tick, copy env and env2 into immutable BoardSnapshots (only if they
+ * 		changed) and publish them through volatile fields. Only the thread that calls play() should publish.
+ * 	snapshot(), previewSnapshot(): the latest published BoardSnapshots, safe to read from any thread
+ * 
+ * Randomness:
+ * 	Everything random comes from the engine's own GameRandom streams, one per purpose (random(RANDOM_PIECES),
+ * 	RANDOM_POWERUPS, RANDOM_GARBAGE, RANDOM_SCRAMBLE), split off one seed. The same seed and the same
+ * 	moves give the same game. setSeed() reseeds them; restart() afterwards to deal from the new seed.
+ * 
+ * Recording:
+ * 	setRecorder(MatchRecorder, side): every command the engine is given from outside (the ArrowListener
+ * 	methods, from the keyboard or the AI) is reported to the recorder. Moves the engine makes itself
+ * 	(gravity, a held down key) are not; they follow from the commands and the seed.
+ * 
+ * Timing is not handled here: whoever drives the engine (Tetris, TetrisControl, TetrisMatch)
+ * 	decides when to call play() (gravity) and act() (held keys and AI).
+ * 
+ */
+
+import java.awt.*;
+import java.util.ArrayList;
+
+// The rules of one Tetris board. Never touches Swing; see Tetris for the windowed front end.
+public class TetrisEngine implements ArrowListener
+{
+	private MyBoundedEnv env;
+	private Tetrad rad;
+
+	private MyBoundedEnv env2;
+	private Tetrad rad2;
+
+	private int score;
+	private int level;
+	private int[] stats = new int[5]; // num 1's, 2's, 3's, 4's, and rowsSent
+	private int rowsMoved;
+	private boolean paused;
+
+	private boolean[] arrows; // 0 is up, 1 is left, 2 is right, 3 is down
+
+	public static int GAME_ROWS = 22;
+	public static int GAME_COLS = 10;
+
+	public static final int RANDOM_PIECES = 0;
+	public static final int RANDOM_POWERUPS = 1;
+	public static final int RANDOM_GARBAGE = 2;
+	public static final int RANDOM_SCRAMBLE = 3;
+	private long seed;
+	private GameRandom[] random = new GameRandom[4];
+
+	private MatchRecorder recorder = null;
+	private int side;
+
+	private int pendingRows = 0;
+	private ArrayList<Block> garbage = new ArrayList<Block>(); // every garbage Block made; reused once off the board
+
+	private TetrisEngine opp = null;
+	public TetrisAI ai = null;
+
+	private PowerUp currentPowerUp = null;
+
+	private BoardSnapshot.Builder snapshotBuilder = new BoardSnapshot.Builder();
+	private BoardSnapshot.Builder previewBuilder = new BoardSnapshot.Builder();
+	private volatile BoardSnapshot snapshot = null;
+	private volatile BoardSnapshot previewSnapshot = null;
+	
+	public TetrisEngine()
+	{
+		this(GameRandom.newSeed());
+	}
+	public TetrisEngine(long seed)
+	{
+		setSeed(seed);
+		arrows = new boolean[4];
+		for (int i = 0; i < arrows.length; i++)
+			arrows[i] = false;
+
+		env=new MyBoundedEnv(GAME_ROWS,GAME_COLS);
+		env2=new MyBoundedEnv(4,GAME_COLS);
+
+		score=0;
+		level=1;
+		statusChanged("");
+		rad2=new Tetrad(env2, true, random[RANDOM_PIECES], random[RANDOM_POWERUPS]);
+		newTetrad();
+		rowsMoved=1;
+	}
+
+	public void setSeed(long seed)
+	{
+		this.seed = seed;
+		GameRandom root = new GameRandom(seed);
+		for (int i = 0; i < random.length; i++)
+			random[i] = root.split();
+	}
+	public long getSeed()
+	{
+		return seed;
+	}
+	public GameRandom random(int purpose)
+	{
+		return random[purpose];
+	}
+
+	public void setRecorder(MatchRecorder recorder, int side)
+	{
+		this.recorder = recorder;
+		this.side = side;
+	}
+	private void record(int command)
+	{
+		if (recorder != null)
+			recorder.command(side, command);
+	}
+
+	/* Front end hook. The engine calls it when the level, score or status changes; it does nothing here.
+	 * The boards need no hook: publish() snapshots them and the snapshots show what changed. */
+	protected void statusChanged(String status) { }
+
+	public int getLevel()
+	{
+		return level;
+	}
+	public int getScore()
+	{
+		return score;
+	}
+	public int[] getStats()
+	{
+		return stats;
+	}
+	public boolean isPaused()
+	{
+		return paused;
+	}
+	protected void setPaused(boolean paused)
+	{
+		this.paused = paused;
+	}
+	public void printStats(String prepend)
+	{
+		System.out.println(prepend + " Level: " + level);
+		System.out.println(prepend + " Score: " + score);
+		System.out.println(prepend + " Singles: " + stats[0]);
+		System.out.println(prepend + " Doubles: " + stats[1]);
+		System.out.println(prepend + " Triples: " + stats[2]);
+		System.out.println(prepend + " Tetrises: " + stats[3]);
+		System.out.println(prepend + " Rows Sent: " + stats[4]);
+	}
+
+	public void setAI(TetrisAI ai)
+	{
+		this.ai = ai;
+	}
+	public MyBoundedEnv board()
+	{
+		return env;
+	}
+	public void publish()
+	{
+		snapshot = snapshotBuilder.build(env, snapshot);
+		previewSnapshot = previewBuilder.build(env2, previewSnapshot);
+	}
+	public BoardSnapshot snapshot()
+	{
+		return snapshot;
+	}
+	public BoardSnapshot previewSnapshot()
+	{
+		return previewSnapshot;
+	}
+	public MyBoundedEnv previewBoard()
+	{
+		return env2;
+	}
+	public Tetrad currentRad()
+	{
+		return rad;
+	}
+	public Tetrad nextRad()
+	{
+		return rad2;
+	}
+	public void setNextRad(Tetrad newRad)
+	{
+		rad2 = newRad;
+	}
+
+	public void setOpponent(TetrisEngine other)
+	{
+		opp = other;
+	}
+	public void increasePendingRows(int num)
+	{
+		pendingRows += num;
+	}
+	public void resetPendingRows()
+	{
+		pendingRows = 0;
+	}
+	public void addPendingRows()
+	{
+		if (pendingRows == 0)
+			return;
+		// Every block on the board moves up by 'pendingRows'; any that go past the top are gone.
+		// The new bottom rows are filled with black blocks, excluding 1 block per row (at random)
+		// and sometimes a second one. The board does the shifting and filling in one go.
+		long[] rows = new long[Math.min(pendingRows, env.numRows())];
+		int count = 0;
+		for (int i = 0; i < rows.length; i++)
+		{
+			GameRandom r = random[RANDOM_GARBAGE];
+			int exclude = r.nextInt(env.numCols());
+			int alsoExclude = -1;
+
+			if (r.nextDouble() < .25)
+				alsoExclude = r.nextInt(env.numCols());
+			rows[i] = env.fullRowBits() & ~(1L << exclude);
+			if (alsoExclude != -1)
+				rows[i] &= ~(1L << alsoExclude);
+			count += Long.bitCount(rows[i]);
+		}
+		env.insertRows(rows, garbageBlocks(count));
+
+		// added the rows, so we're done
+		resetPendingRows();
+
+	}
+	// Black Blocks for 'count' garbage cells: ones that have left the board first, then new ones
+	private Block[] garbageBlocks(int count)
+	{
+		Block[] blocks = new Block[count];
+		int n = 0;
+		for (int i = 0; i < garbage.size() && n < count; i++)
+		{
+			Block b = garbage.get(i);
+			if (env.objectAt(b.location()) != b)
+			{
+				b.setColor(Color.BLACK);
+				b.setPowerType(PowerUp.POWERUP_NORMAL);
+				blocks[n++] = b;
+			}
+		}
+		while (n < count)
+		{
+			Block b = new Block(Color.BLACK);
+			garbage.add(b);
+			blocks[n++] = b;
+		}
+		return blocks;
+	}
+	public PowerUp setCurrentPowerUp(int powerType)
+	{
+		if (currentPowerUp == null) // to avoid conflicts
+		{
+			currentPowerUp = new PowerUp(this, env, env2, powerType);
+			return currentPowerUp;
+		}
+		return null;
+	}
+
+	public boolean notLost()
+	{
+		if(rowsMoved!=-1)
+			return true;
+		statusChanged(" Game Over!");
+		return false;
+	}
+	public void restart()
+	{
+		env.clearAll();
+		env2.clearAll();
+		rad = null;
+		rad2=new Tetrad(env2, true, random[RANDOM_PIECES], random[RANDOM_POWERUPS]);
+		rowsMoved = 0;
+		level = 1;
+		score = 0;
+		stats = new int[5];
+		newTetrad();
+
+		currentPowerUp = null;
+		pendingRows = 0;
+	}
+
+	public boolean newTetrad()
+	{
+		if (rad != null)
+			rad.activate();
+		Tetrad oldRad = rad;
+
+		rad=rad2.changeEnv(env); // oh dear what if I press down right now?! Then overlap => premature gameover
+
+		rad.activate();
+
+		env2.clearAll();
+		rad2=new Tetrad(env2, oldRad, random[RANDOM_PIECES], random[RANDOM_POWERUPS]);
+		Locatable[] b=rad2.blocks();
+		for(int i=0;i<b.length;i++)
+		{
+			env2.add(b[i]);
+		}
+		boolean c=true;
+		Locatable[] a=rad.blocks();
+		for(int i=0;i<a.length;i++)
+		{
+			if(env.isEmpty(a[i].location()))
+				env.add(a[i]);
+			else
+				c=false;
+		}
+		return c;
+	}
+	
+	
+	public void leftPressed()
+	{
+		record(MatchRecorder.LEFT);
+		if(rad!=null)
+			rad.translate(0,-1);
+	}
+	public void rightPressed()
+	{
+		record(MatchRecorder.RIGHT);
+		if(rad!=null)
+			rad.translate(0,1);
+	}
+	public void upPressed()
+	{
+		record(MatchRecorder.ROTATE);
+		if(rad!=null)
+			rad.rotate();
+	}
+	public void downEnd()
+	{
+		if (arrows[3])
+			record(MatchRecorder.DOWN_END);
+		arrows[3] = false;
+	}
+
+	public void downStart()
+	{
+		if (!arrows[3] || opp == null)
+			record(MatchRecorder.DOWN_START);
+		arrows[3] = true;
+		if (opp == null)
+			softDrop();
+	}
+	public void downPressed()
+	{
+		record(MatchRecorder.DOWN);
+		softDrop();
+	}
+	private void softDrop()
+	{
+		if(rad!=null)
+		{
+		if(rad.translate(1,0))
+		{
+			rowsMoved++;
+			score+=level;
+			if(score-(level*level*100)>0)
+				increaseLevel();
+		}
+		}
+	}
+	public void pPressed()
+	{
+		record(MatchRecorder.PAUSE);
+		paused=!paused;
+		if(paused)
+			statusChanged(" Paused!");
+		else
+			statusChanged(" Resuming...");
+	}
+	public void spacePressed()
+	{
+		record(MatchRecorder.SPACE);
+		if(rad.blocks()[0].color()==Color.black)
+		{
+			blowUp();
+			boolean a=newTetrad();
+			statusChanged(" Kaboom!");
+			if(!a)
+			{
+				statusChanged(" Game Over!");
+				rowsMoved=-10;
+			}
+		}
+		if(rad.blocks()[0].color()==Color.white)
+		{
+			blowDown();
+			clearCompletedRows();
+			boolean a=newTetrad();
+			statusChanged(" Pop!");
+			if(!a)
+			{
+				statusChanged(" Game Over!");
+				rowsMoved=-10;
+			}
+		}
+	}	
+	public void qPressed() { }
+	public void ePressed() { }
+	public void sStart() { }
+	public void sEnd() { }
+	public void periodPressed() { }
+	public void commaPressed() { }
+	public void enterPressed() { }
+	public void wPressed() { }
+	public void sPressed() { }
+	public void aPressed() { }
+	public void dPressed() { }
+	
+	
+	public void nullRad()
+	{
+		rad=null;
+	}
+	// moves the arrows
+	public void act()
+	{
+		if (arrows[3])
+			softDrop();
+
+		if (ai != null)
+		{
+			ai.think();
+			ai.actuate();
+		}
+	}
+	public void play()
+	{
+		if(rad.moveDown())
+		{
+			rowsMoved++;
+		}
+		else
+		{
+			if (currentPowerUp != null && currentPowerUp.expiring())
+				currentPowerUp.afterAction();
+
+			if (currentPowerUp != null && !currentPowerUp.expiring())
+				currentPowerUp.increaseTime();
+			else
+				currentPowerUp = null;
+			clearCompletedRows();
+
+
+			addPendingRows();
+
+			rowsMoved=0;
+			arrows[3] = false; // let go of down for the next Tetrad
+
+			if (currentPowerUp != null)
+				currentPowerUp.beforeAction();
+
+			boolean a=newTetrad();
+			if(!a)
+			{
+				statusChanged(" Game Over!");
+				rowsMoved=-1;
+			}
+			score+=5*level;
+			if(score-(level*level*1000)>0)
+				increaseLevel();
+			statusChanged("");
+		}
+	}
+	private void blowUp()
+	{
+		Block a=rad.blocks()[0];
+		Location loc=a.location();
+		int row=loc.row();
+		int col=loc.col();
+		for (int i = row - 1; i <= row+1; i++)
+		{
+			for (int j = col - 1; j <= col+1; j++)
+			{
+				Locatable lb = env.objectAt(i, j);
+				if (lb != null)
+				{
+					env.remove(lb);
+					score+=level*5;
+				}
+			}
+		}
+		statusChanged("");
+	}
+	private void blowDown()
+	{
+		Block a=rad.blocks()[0];
+		Location loc=a.location();
+		int row=loc.row();
+		int col=loc.col();
+		for (int i = row - 1; i <= row+1; i++)
+		{
+			for (int j = col - 1; j <= col+1; j++)
+			{
+				if (env.isValid(i, j) && env.isEmpty(i, j))
+				{
+					Block b=new Block(Color.white);
+					b.setLocation(MyBoundedEnv.location(i, j));
+					env.add(b);
+					score+=level*5;
+				}
+			}
+		}
+		statusChanged("");
+	}
+	private boolean isCompletedRow(int row)
+	{
+		return env.isFullRow(row);
+	}
+	// The power up a full row gives: the first one in it, left to right
+	private int rowPowerUp(int row)
+	{
+		int powerUp = 0;
+		for(int i=0;i<env.numCols();i++)
+		{
+			Block b = (Block)env.objectAt(row,i);
+			if (powerUp == 0)
+				powerUp = b.getPowerType();
+		}
+		return powerUp;
+	}
+	public void clearCompletedRows()
+	{
+		// Collect the full rows' power ups top to bottom first, then drop the rest of the board in one pass
+		int a=0;
+		for(int i=0;i<env.numRows();i++)
+		{
+			if(isCompletedRow(i))
+			{
+				int powerType = rowPowerUp(i);
+				if (powerType != PowerUp.POWERUP_NORMAL)
+				{
+					if (PowerUp.mineOrOpp(powerType))
+					{
+						setCurrentPowerUp(powerType);
+						currentPowerUp.changeRad();
+					}
+					else
+					{
+						if (opp != null)
+						{
+							PowerUp p = opp.setCurrentPowerUp(powerType);
+							if (p != null)
+								p.changeRad();
+						}
+					}
+				}
+
+				a++;
+			}
+		}
+		if (a > 0)
+			env.clearFullRows();
+
+		// No power up outlives a clear
+		for(int i=0;i<env.numRows();i++)
+		{
+			for (long bits = env.rowBits(i); bits != 0; bits &= bits - 1)
+			{
+				Block b = (Block)env.objectAt(i, Long.numberOfTrailingZeros(bits));
+				env.setPowerType(b, PowerUp.POWERUP_NORMAL);
+			}
+		}
+		if(a==1)
+		{
+			score+=40*level;
+			stats[0]++;
+		}
+		if(a==2)
+		{
+			score+=100*level;
+			stats[1]++;
+		}
+		if(a==3)
+		{
+			score+=300*level;
+			stats[2]++;
+		}
+		if(a==4)
+		{
+			score+=1200*level;
+			stats[3]++;
+		}
+		while(score-(level*level*100)>0)
+			increaseLevel();
+		statusChanged("");
+
+		// Penalize opponent!
+		if (opp != null && a > 1)
+		{
+			opp.increasePendingRows(a - 1);
+			stats[4]+=a-1;
+		}
+	}
+	public void increaseLevel()
+	{
+		level++;
+		if (opp != null && level % 4 == 0)
+		{
+			opp.increasePendingRows(1);
+			stats[4]++;
+		}
+	}
+
+}
\ No newline at end of file
@@ -1,4 +1,10 @@
 import java.awt.Color;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 /** TetrisHeuristicAI implements TetrisAI's think() and actuate() methods
  * 
@@ -8,21 +14,103 @@ import java.awt.Color;
  * 
  * 	Goal is to maximize board weight when checking all possible orientations of current Tetrad
  * 
+ * 	setParallel(true) searches the 4 rotations on a shared thread pool, each with its own scratch
+ * 	copy of the board. The results are combined in the serial order, so desValues are identical.
+ * 
+ * 	The search works on preallocated primitive buffers (see Workspace) that the AI keeps between
+ * 	calls, so once the buffers exist a serial think() allocates nothing.
+ * 	Column tops are read from the board's column bitboards once per think(). A piece that starts
+ * 	above the stack is dropped straight onto them, and computeBoardWeight skips the empty rows
+ * 	above the stack, since they never add to the weight or the penalties.
+ * 
+ * 	setLookahead(true) also looks at tetris.nextRad(). The lookaheadWidth best placements of the
+ * 	current Tetrad are each scored by the best placement of the next Tetrad on top of them.
+ * 	That is about lookaheadWidth + 1 plain searches, far less than one TetrisMatch.INTERVAL.
+ * 
+ * 	setCache(EvaluationCache) remembers board weights by Zobrist hash (MyBoundedEnv.cellKey and
+ * 	powerKey), kept up to date with an xor for each cell a placement changes. The hash covers g and
+ * 	the power-up blocks of the placed Tetrad, which is everything computeBoardWeight looks at.
+ * 
  * @author AlexFandrianto
  *
  */
 
 public class TetrisHeuristicAI implements TetrisAI {
 
-	protected Tetris tetris;
+	protected TetrisEngine tetris;
 	protected MyBoundedEnv board;
 	
 	protected Tetrad curRad = null; // doesn't match tetris.currentRad() if we need to rethink
 	protected int[] desValues = new int[3]; // for if we've thought. How we want to move the rad
 	protected int[] curValues = new int[3]; // needs to reach desValues
 	
+	protected boolean parallel = false; // search the rotations on several threads at once
+	private Workspace[] workspaces = new Workspace[4]; // [0] for a serial search, one per rotation in parallel
+	private Runnable[] searches = new Runnable[4]; // searches[r] searches rotation r in workspaces[r]
+	private Future<?>[] pending = new Future<?>[4];
 	
-	public TetrisHeuristicAI(Tetris t)
+	protected boolean lookahead = false; // also place the next Tetrad before choosing
+	protected int lookaheadWidth = 8; // how many of the best first placements get a second look
+	private int[] topWeights = new int[8], topRs = new int[8], topIs = new int[8]; // best first, by weight
+	private int topCount;
+	private Workspace ahead; // the board with a first placement made, for placing the next Tetrad
+	protected EvaluationCache cache = null; // weights of boards already seen, by hash
+	private static ExecutorService pool = null;
+	
+	/** Scratch buffers for searching placements. Owned by one thread at a time. */
+	protected static class Workspace
+	{
+		int[][] g; // the board without the current Tetrad. 1 = block, 0 = empty
+		Tetrad piece; // the Tetrad being placed
+		int size; // how many blocks piece has
+		int[] baseRows = new int[4], baseCols = new int[4]; // where piece is now
+		int[] turnRows = new int[4], turnCols = new int[4]; // piece after some rotations
+		int[] rows = new int[4], cols = new int[4]; // the candidate placement
+		boolean[] filled = new boolean[4]; // which candidate cells went from 0 to 1 in g
+		int[] flipRows = new int[9], flipCols = new int[9]; // cells changed by a bomb or antibomb
+		int flips;
+		int[] colTop; // the first row with a block in each column of g (g.length if none)
+		int baseTop; // the first row with a block anywhere in g
+		int top; // no blocks above this row with the candidate placed
+		int[] rowBlockCount, seenBlockInCol, gotCavern; // computeBoardWeight's counters
+		int bestWeight, bestI; // the result of searchRotation
+		int[] candWeights = new int[11], candShifts = new int[11]; // every placement searchRotation tried
+		int candidates;
+		long baseHash; // Zobrist hash of g
+		long placedHash; // ... with the candidate placed (and any blast)
+		long hash; // ... and the candidate's power-up blocks, the key for the cache
+		
+		Workspace(int numRows, int numCols)
+		{
+			g = new int[numRows][numCols];
+			rowBlockCount = new int[numRows];
+			seenBlockInCol = new int[numCols];
+			gotCavern = new int[numCols];
+			colTop = new int[numCols];
+		}
+		
+		boolean fits(MyBoundedEnv board)
+		{
+			return g.length == board.numRows() && g[0].length == board.numCols();
+		}
+		
+		// Same board and same piece as w
+		void copyFrom(Workspace w)
+		{
+			for (int i = 0; i < g.length; i++)
+				System.arraycopy(w.g[i], 0, g[i], 0, g[i].length);
+			piece = w.piece;
+			size = w.size;
+			System.arraycopy(w.baseRows, 0, baseRows, 0, size);
+			System.arraycopy(w.baseCols, 0, baseCols, 0, size);
+			System.arraycopy(w.colTop, 0, colTop, 0, colTop.length);
+			baseTop = w.baseTop;
+			baseHash = w.baseHash;
+		}
+	}
+	
+	
+	public TetrisHeuristicAI(TetrisEngine t)
 	{
 		t.setAI(this);
 		tetris = t;
@@ -43,151 +131,471 @@ public class TetrisHeuristicAI implements TetrisAI {
 
 		curRad = tetris.currentRad();
 		
-		Tetrad b = tetris.currentRad();
-		Location[] retLocs = b.removeBlocks();
-		int[][] g = board.intGrid();
-		b.addToLocations(retLocs);
-		
+		Workspace w = workspace(0);
+		loadBoard(w, curRad);
 		
 		int bestWeight = -10000000;
 		int bestR = 0;
 		int bestI = -4;
+		topCount = 0;
+
+		if (parallel)
+			searchParallel(w);
 
+		// Same order as a serial search, so the same candidate wins ties either way
 		for (int r = 0; r <= 3; r++) // number of rotations you can have
 		{
-			// reset currentLocs to the same as current Tetrad
-			Location[] cLocs = new Location[retLocs.length];
-			for (int i = 0; i < retLocs.length; i++)
-				cLocs[i] = retLocs[i];
+			Workspace rw = w;
+			if (parallel)
+				rw = workspaces[r];
+			else
+				searchRotation(w, r);
+			
+			if (rw.bestWeight > bestWeight)
+			{
+				bestWeight = rw.bestWeight;
+				bestR = r;
+				bestI = rw.bestI;
+			}
+			if (lookahead)
+				for (int c = 0; c < rw.candidates; c++)
+					keepBest(rw.candWeights[c], r, rw.candShifts[c]);
+		}
+		
+		desValues[0] = bestWeight;
+		desValues[1] = bestR;
+		desValues[2] = bestI;
+		if (lookahead && tetris.nextRad() != null)
+			lookAhead(w, tetris.nextRad());
+		//System.out.println(desValues[0] + " " + desValues[1] + " " + desValues[2]);
+		Arrays.fill(curValues, 0);
+	}
+	
+	// The workspace for slot r, made again if the board is a different size than last time
+	private Workspace workspace(int r)
+	{
+		if (workspaces[r] == null || !workspaces[r].fits(board))
+			workspaces[r] = new Workspace(board.numRows(), board.numCols());
+		return workspaces[r];
+	}
+	
+	// Fill w.g from the board's bitboard, leaving out piece, which is still on the board
+	protected void loadBoard(Workspace w, Tetrad piece)
+	{
+		int[][] g = w.g;
+		for (int i = 0; i < g.length; i++)
+		{
+			long bits = board.rowBits(i);
+			for (int j = 0; j < g[i].length; j++)
+				g[i][j] = (int)((bits >>> j) & 1);
+		}
+		
+		setPiece(w, piece);
+		w.baseHash = board.occupancyHash();
+		for (int k = 0; k < w.size; k++)
+		{
+			g[w.baseRows[k]][w.baseCols[k]] = 0;
+			w.baseHash ^= MyBoundedEnv.cellKey(w.baseRows[k], w.baseCols[k]);
+		}
+		
+		w.baseTop = g.length;
+		for (int j = 0; j < g[0].length; j++)
+		{
+			long bits = board.columnBits(j);
+			for (int k = 0; k < w.size; k++)
+				if (w.baseCols[k] == j)
+					bits &= ~(1L << w.baseRows[k]);
+			w.colTop[j] = (bits == 0) ? g.length : Long.numberOfTrailingZeros(bits);
+			w.baseTop = Math.min(w.baseTop, w.colTop[j]);
+		}
+	}
+	
+	// Best weight and column shift (w.bestWeight, w.bestI) for w.piece turned r times.
+	// The first one wins ties. Only w is written to, and w.g is restored before returning.
+	protected void searchRotation(Workspace w, int r)
+	{
+		int bestWeight = -10000000;
+		int bestI = -4;
+
+		turn(w, r);
+		w.candidates = 0;
+		
+		for (int i = -5; i <= 5; i++) // number of column shifts you can have
+		{
+			if (!place(w, i))
+				continue;
 			
-			for (int turns = 0; turns < r; turns++)
-				cLocs = b.turnLocs(true, cLocs, cLocs[0].row(), cLocs[0].col());
+			int weight = evaluate(w);
+			//System.out.println("Candidates: " + weight + " " + r + " " + i + " " + avgHeight(g));
 			
+			unplace(w);
 			
-			for (int i = -5; i <= 5; i++) // number of column shifts you can have
+			w.candWeights[w.candidates] = weight;
+			w.candShifts[w.candidates++] = i;
+			if (weight > bestWeight)
 			{
-				Location[] currentLocs = new Location[cLocs.length];
-				for (int br = 0; br < cLocs.length; br++)
-					currentLocs[br] = cLocs[br];
-				
-				boolean valid = true;
-				// shift it accordingly
-				for (int j = 0; j < currentLocs.length; j++)
+				bestWeight = weight;
+				bestI = i;
+			}
+		}
+		w.bestWeight = bestWeight;
+		w.bestI = bestI;
+	}
+	
+	// Turn w.piece r times into w.turnRows/turnCols, clockwise about block 0 like Tetrad.turnLocs(true, ...)
+	protected void turn(Workspace w, int r)
+	{
+		int n = w.size;
+		
+		// reset the turned locations to the same as current Tetrad
+		System.arraycopy(w.baseRows, 0, w.turnRows, 0, n);
+		System.arraycopy(w.baseCols, 0, w.turnCols, 0, n);
+		
+		int row0 = w.baseRows[0];
+		int col0 = w.baseCols[0];
+		for (int turns = 0; turns < r; turns++)
+			for (int k = 0; k < n; k++)
+			{
+				int row = w.turnRows[k];
+				w.turnRows[k] = row0 - col0 + w.turnCols[k];
+				w.turnCols[k] = row0 + col0 - row;
+			}
+	}
+	
+	// Shift the turned piece i columns, drop it, and put it (and a bomb's or antibomb's blast) into w.g.
+	// False if it doesn't fit, and then w.g is unchanged. Otherwise take it back out with unplace(w).
+	protected boolean place(Workspace w, int i)
+	{
+		int[][] g = w.g;
+		int n = w.size;
+		
+		boolean valid = true;
+		// shift it accordingly
+		for (int k = 0; k < n; k++)
+		{
+			w.rows[k] = w.turnRows[k];
+			w.cols[k] = w.turnCols[k] + i;
+			
+			if (w.cols[k] >= g[0].length || w.cols[k] < 0)
+				valid = false;
+		}
+		
+		if(!valid)
+			return false;
+		
+		// A piece above its columns' tops lands on the first one it reaches
+		int drop = g.length;
+		for (int k = 0; k < n && drop >= 0; k++)
+			drop = Math.min(drop, w.colTop[w.cols[k]] - 1 - w.rows[k]);
+		
+		// now push down all the way
+		boolean down = drop < 0; // otherwise it is already known
+		if (!down)
+			for (int k = 0; k < n; k++)
+				w.rows[k] += drop;
+		while (down)
+		{
+			for (int k = 0; k < n; k++)
+			{
+				int row = w.rows[k];
+				if (row >= 0 && (row >= g.length || g[row][w.cols[k]] == 1))
 				{
-					Location loc = currentLocs[j];
-					currentLocs[j] = new Location(loc.row(), loc.col()+i);
-					
-					if (loc.col()+i >= g[0].length || loc.col()+i < 0)
-						valid = false;
+					down = false; // shift back up 1 since we went 1 too far
 				}
-				
-				if(!valid)
-					continue;
-				
-				// now push down all the way
-				boolean down = true;
-				int countDown = 0;
-				while (down)
-				{
-					////System.out.println(countDown);
-					for (int L = 0; L < currentLocs.length; L++)
+			}
+			
+			for (int k = 0; k < n; k++)
+			{
+				if (down)
+					w.rows[k]++;
+				else
+					w.rows[k]--;
+			}
+		}
+		
+		boolean addedToBoard = true;
+		// Near the top the piece can overlap the stack, so only undo the cells it actually filled.
+		// Otherwise g would be left with holes and the next candidates would see a different board.
+		// You're down all the way now. So how's the board looking?
+		for (int k = 0; k < n; k++)
+		{
+			int row = w.rows[k];
+			int col = w.cols[k];
+			w.filled[k] = false;
+			if (row < 0 || row >= g.length)
+				addedToBoard = false;
+			else if (g[row][col] == 0)
+			{
+				g[row][col] = 1; // into board
+				w.filled[k] = true;
+			}
+		}
+		if (!addedToBoard)
+		{
+			unfill(w);
+			return false;
+		}
+		
+		w.top = w.baseTop;
+		long hash = w.baseHash;
+		for (int k = 0; k < n; k++)
+		{
+			w.top = Math.min(w.top, w.rows[k]);
+			if (w.filled[k])
+				hash ^= MyBoundedEnv.cellKey(w.rows[k], w.cols[k]);
+		}
+		
+		w.flips = 0;
+		Color color = w.piece.blocks()[0].color();
+		if (color == Color.white)
+		{
+			for (int rx = w.rows[0]-1; rx <= w.rows[0]+1; rx++)
+				for (int j = w.cols[0]-1; j<= w.cols[0]+1; j++)
+					if (rx >= 0 && rx < g.length && j >= 0 && j < g[0].length && g[rx][j] == 0 && rx != j)
 					{
-						Location loc = currentLocs[L];
-						////System.out.println(loc);
-						if (loc.row() >= 0 && (loc.row() >= g.length || g[loc.row()][loc.col()] == 1))
-						{
-							down = false; // shift back up 1 since we went 1 too far
-						}
+						g[rx][j] = 1;
+						w.top = Math.min(w.top, rx);
+						w.flipRows[w.flips] = rx;
+						w.flipCols[w.flips++] = j;
 					}
-					
-					if (down)
+		}
+		else if (color == Color.black)
+		{
+			for (int rx = w.rows[0]-1; rx <= w.rows[0]+1; rx++)
+				for (int j = w.cols[0]-1; j<= w.cols[0]+1; j++)
+					if (rx >= 0 && rx < g.length && j >= 0 && j < g[0].length && g[rx][j] == 1)
 					{
-						for (int L = 0; L < currentLocs.length; L++)
-						{
-							Location loc = currentLocs[L];
-							currentLocs[L] = new Location(loc.row()+1, loc.col());
-						}
-						countDown++;
+						g[rx][j] = 0;
+						w.flipRows[w.flips] = rx;
+						w.flipCols[w.flips++] = j;
 					}
-					else
-					{
-						for (int L = 0; L < currentLocs.length; L++)
-						{
-							Location loc = currentLocs[L];
-							currentLocs[L] = new Location(loc.row() - 1, loc.col());
-						}
-					}
-				}
-				
-				boolean addedToBoard = true;
-				// You're down all the way now. So how's the board looking?
-				for (Location loc : currentLocs)
-				{
-					if (board.isValid(loc))
-						g[loc.row()][loc.col()] = 1; // into board
-					else
-						addedToBoard = false;
-				}
-				if (!addedToBoard)
+		}
+		for (int f = 0; f < w.flips; f++)
+			hash ^= MyBoundedEnv.cellKey(w.flipRows[f], w.flipCols[f]);
+		w.placedHash = hash;
+		
+		Block[] blocks = w.piece.blocks();
+		for (int k = 0; k < n; k++)
+			hash ^= MyBoundedEnv.powerKey(blocks[k].getPowerType(), w.rows[k], w.cols[k]);
+		w.hash = hash;
+		return true;
+	}
+	
+	// computeBoardWeight, through the cache if there is one
+	protected int evaluate(Workspace w)
+	{
+		if (cache == null)
+			return computeBoardWeight(w);
+		long cached = cache.lookup(w.hash);
+		if (cached != EvaluationCache.MISS)
+			return (int)cached;
+		int weight = computeBoardWeight(w);
+		cache.store(w.hash, weight);
+		return weight;
+	}
+	
+	protected void unplace(Workspace w)
+	{
+		for (int f = 0; f < w.flips; f++)
+			w.g[w.flipRows[f]][w.flipCols[f]] ^= 1;
+		unfill(w);
+	}
+	
+	private void unfill(Workspace w)
+	{
+		for (int k = 0; k < w.size; k++)
+		{
+			if (w.filled[k])
+				w.g[w.rows[k]][w.cols[k]] = 0; // out of board
+		}
+	}
+	
+	// Insert a first placement into the top list, after any with the same weight (the serial tie order)
+	private void keepBest(int weight, int r, int i)
+	{
+		int at = topCount;
+		while (at > 0 && topWeights[at - 1] < weight)
+			at--;
+		if (at >= lookaheadWidth)
+			return;
+		if (topCount < lookaheadWidth)
+			topCount++;
+		for (int k = topCount - 1; k > at; k--)
+		{
+			topWeights[k] = topWeights[k - 1];
+			topRs[k] = topRs[k - 1];
+			topIs[k] = topIs[k - 1];
+		}
+		topWeights[at] = weight;
+		topRs[at] = r;
+		topIs[at] = i;
+	}
+	
+	// Rescore the best first placements (still in w, which is restored) by where next can go after them
+	private void lookAhead(Workspace w, Tetrad next)
+	{
+		if (ahead == null || !ahead.fits(board))
+			ahead = new Workspace(board.numRows(), board.numCols());
+		Workspace a = ahead;
+		
+		int best = -10000000;
+		int bestK = -1;
+		for (int k = 0; k < topCount; k++)
+		{
+			a.copyFrom(w);
+			turn(a, topRs[k]);
+			place(a, topIs[k]); // it fit in the first search, so it fits again; leave it there
+			
+			// Rows the first placement completes are left in, since computeBoardWeight expects them
+			setPiece(a, next);
+			findTops(a);
+			a.baseHash = a.placedHash;
+			int second = -10000000;
+			for (int r = 0; r <= 3; r++)
+			{
+				searchRotation(a, r);
+				second = Math.max(second, a.bestWeight);
+			}
+			
+			if (second > best)
+			{
+				best = second;
+				bestK = k;
+			}
+		}
+		
+		if (bestK < 0)
+			return; // the next Tetrad fits nowhere, so keep the plain choice
+		desValues[0] = best;
+		desValues[1] = topRs[bestK];
+		desValues[2] = topIs[bestK];
+	}
+	
+	// Where a Tetrad spawns is where its blocks are while it waits as tetris.nextRad()
+	private void setPiece(Workspace w, Tetrad piece)
+	{
+		Block[] blocks = piece.blocks();
+		w.piece = piece;
+		w.size = blocks.length;
+		for (int k = 0; k < blocks.length; k++)
+		{
+			w.baseRows[k] = blocks[k].location().row();
+			w.baseCols[k] = blocks[k].location().col();
+		}
+	}
+	
+	// Recompute w.colTop and w.baseTop by scanning w.g
+	private void findTops(Workspace w)
+	{
+		int[][] g = w.g;
+		w.baseTop = g.length;
+		for (int j = 0; j < g[0].length; j++)
+		{
+			int i = 0;
+			while (i < g.length && g[i][j] == 0)
+				i++;
+			w.colTop[j] = i;
+			w.baseTop = Math.min(w.baseTop, i);
+		}
+	}
+	
+	public void setCache(EvaluationCache cache)
+	{
+		this.cache = cache;
+	}
+	public EvaluationCache getCache()
+	{
+		return cache;
+	}
+	public void setLookahead(boolean lookahead)
+	{
+		this.lookahead = lookahead;
+	}
+	public boolean isLookahead()
+	{
+		return lookahead;
+	}
+	public void setLookaheadWidth(int width)
+	{
+		lookaheadWidth = Math.max(1, width);
+		topWeights = new int[lookaheadWidth];
+		topRs = new int[lookaheadWidth];
+		topIs = new int[lookaheadWidth];
+	}
+
+	// Rotations 1-3 go to the pool, each in its own workspace; rotation 0 runs on this thread.
+	private void searchParallel(Workspace w)
+	{
+		for (int r = 1; r <= 3; r++)
+		{
+			workspace(r).copyFrom(w);
+			pending[r] = searchPool().submit(search(r));
+		}
+		searchRotation(w, 0);
+		boolean interrupted = false;
+		for (int r = 1; r <= 3; r++)
+		{
+			while (true)
+			{
+				try
 				{
-					for (Location loc : currentLocs)
-					{
-						if (board.isValid(loc))
-							g[loc.row()][loc.col()] = 0; // out of board
-					}
-					continue;
+					pending[r].get();
+					break;
 				}
-				
-				int[][] gflip = new int[g.length][g[0].length];
-				if (curRad.blocks()[0].color() == Color.white)
+				catch (InterruptedException e)
 				{
-					for (int rx = currentLocs[0].row()-1; rx <= currentLocs[0].row()+1; rx++)
-						for (int j = currentLocs[0].col()-1; j<= currentLocs[0].col()+1; j++)
-							if (board.isValid(new Location(rx, j)) && g[rx][j] == 0 && rx != j)
-							{
-								g[rx][j] = 1;
-								gflip[rx][j] = -1;
-							}
+					interrupted = true; // the workers are still using their workspaces, so wait anyway
 				}
-				else if (curRad.blocks()[0].color() == Color.black)
+				catch (ExecutionException e)
 				{
-					for (int rx = currentLocs[0].row()-1; rx <= currentLocs[0].row()+1; rx++)
-						for (int j = currentLocs[0].col()-1; j<= currentLocs[0].col()+1; j++)
-							if (board.isValid(new Location(rx, j)) && g[rx][j] == 1)
-							{
-								g[rx][j] = 0;
-								gflip[rx][j] = 1;
-							}
+					throw new RuntimeException(e.getCause());
 				}
-				
-				int weight = computeBoardWeight(g, currentLocs);
-				//System.out.println("Candidates: " + weight + " " + r + " " + i + " " + avgHeight(g));
-				
-				for (int rx = 0; rx < g.length; rx++)
-					for (int j = 0; j < g[0].length; j++)
-						g[rx][j] += gflip[rx][j];
-				
-				
-				if (weight > bestWeight)
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+	
+	private Runnable search(final int r)
+	{
+		if (searches[r] == null)
+		{
+			searches[r] = new Runnable()
+			{
+				public void run()
 				{
-					bestWeight = weight;
-					bestR = r;
-					bestI = i;
+					searchRotation(workspaces[r], r);
 				}
-				
-				for (Location loc : currentLocs)
+			};
+		}
+		return searches[r];
+	}
+	
+	public void setParallel(boolean parallel)
+	{
+		this.parallel = parallel;
+	}
+	public boolean isParallel()
+	{
+		return parallel;
+	}
+	
+	// One pool of daemon threads shared by every AI, sized to the machine
+	private static synchronized ExecutorService searchPool()
+	{
+		if (pool == null)
+		{
+			pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory()
+			{
+				public Thread newThread(Runnable r)
 				{
-					g[loc.row()][loc.col()] = 0; // out of board
+					Thread t = new Thread(r, "TetrisHeuristicAI search");
+					t.setDaemon(true);
+					return t;
 				}
-				
-			}
+			});
 		}
-		
-		desValues[0] = bestWeight;
-		desValues[1] = bestR;
-		desValues[2] = bestI;
-		//System.out.println(desValues[0] + " " + desValues[1] + " " + desValues[2]);
-		curValues = new int[3];
+		return pool;
 	}
 	
 	protected int doubleAdd(int[][] g)
@@ -222,24 +630,33 @@ public class TetrisHeuristicAI implements TetrisAI {
 		return sum / g[0].length;
 	}
 	
-	protected int computeBoardWeight(int[][] g, Location[] curLocs)
+	// Weight of w.g with w.piece placed at w.rows/w.cols
+	protected int computeBoardWeight(Workspace w)
 	{		
+		int[][] g = w.g;
 		int penalty = 0; // num holes
 		int penalty2 = 0; // num caverns [columns with 3 blanks on top of each other]
 							// 1 is okay. 2 is poor. But 3 => lose
 		int sum = 0;
-		int numBlocks = doubleAdd(g);
+		int numBlocks = 0;
 		
-		int[] rowBlockCount = new int[g.length];
-		for (int i = 0; i < g.length; i++)
+		// Rows above w.top are empty, so they add nothing to the weight and start no holes or caverns
+		int[] rowBlockCount = w.rowBlockCount;
+		Arrays.fill(rowBlockCount, 0);
+		for (int i = w.top; i < g.length; i++)
+		{
 			for (int j = 0; j < g[0].length; j++)
 				if (g[i][j] == 1)
 					rowBlockCount[i]++;
+			numBlocks += rowBlockCount[i];
+		}
 		
-		int[] seenBlockInCol = new int[g[0].length];
+		int[] seenBlockInCol = w.seenBlockInCol;
+		Arrays.fill(seenBlockInCol, 0);
 		
-		int[] gotCavern = new int[g[0].length];
-		for (int i = 0; i < g.length; i++)
+		int[] gotCavern = w.gotCavern;
+		Arrays.fill(gotCavern, 0);
+		for (int i = w.top; i < g.length; i++)
 		{
 			for (int j = 0; j < g[0].length; j++)
 			{
@@ -278,15 +695,13 @@ public class TetrisHeuristicAI implements TetrisAI {
 				//sum += (g.length - i) * (g.length - i) * numBlocks;
 				for (int j = 0; j < g[0].length; j++)
 				{
-					Location loc = new Location(i, j);
-					
 					// If it matches the location of one of our current blocks
 					// Then if that block is actually a power up block, give a bonus!
-					for (int k = 0; k < curLocs.length; k++)
+					for (int k = 0; k < w.size; k++)
 					{
-						if (curLocs[k].equals(loc))
+						if (w.rows[k] == i && w.cols[k] == j)
 						{
-							Block b = curRad.blocks()[k];
+							Block b = w.piece.blocks()[k];
 							if (b.getPowerType() != PowerUp.POWERUP_NORMAL)
 								sum += numBlocks * numBlocks;
 						}
@@ -316,7 +731,7 @@ public class TetrisHeuristicAI implements TetrisAI {
 		
 		int i = row - 3; // only the 3rd block to the left and right
 		for (int j = col-1; j <= col+1; j++)
-			if (board.isValid(new Location(i, j)))
+			if (i >= 0 && i < g.length && j >= 0 && j < g[0].length)
 			{
 				if (j == col && g[i][j] == 1 && !rowComplete(g, i, rowBlockCount))
 					return false; // is not part of a cavern
@@ -330,23 +745,23 @@ public class TetrisHeuristicAI implements TetrisAI {
 
 	@Override
 	public void actuate() {
-		// TODO Auto-generated method stub
+		// Through the engine, like a key press, so a MatchRecorder sees the AI's moves too
 		if (curValues[1] < desValues[1])
 		{
-			curRad.rotate();
+			tetris.upPressed();
 			curValues[1]++;
 			return;
 		}
 			
 		if (curValues[2] < desValues[2])
 		{
-			curRad.translate(0, 1);
+			tetris.rightPressed();
 			curValues[2]++;
 			return;
 		}
 		if (curValues[2] > desValues[2])
 		{
-			curRad.translate(0, -1);
+			tetris.leftPressed();
 			curValues[2]--;
 			return;
 		}
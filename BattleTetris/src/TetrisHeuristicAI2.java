@@ -13,7 +13,7 @@
 public class TetrisHeuristicAI2 extends  TetrisHeuristicAI {
 	
 	
-	public TetrisHeuristicAI2(Tetris t)
+	public TetrisHeuristicAI2(TetrisEngine t)
 	{
 		super(t);
 	}
@@ -0,0 +1,182 @@
+/** TetrisMatch.java
+ *
+ * The timing rules of a game of Battle Tetris between two TetrisEngines, without any Swing.
+ * TetrisControl drives one of these with real time; main() drives them as fast as possible.
+ *
+ * Time is counted in game milliseconds (elapsed), which only advance by INTERVAL per tick().
+ * 	Every factor * INTERVAL ms, both engines are asked to 'play()' in a random (fair) order.
+ * 		The coin for that is the match's own GameRandom.
+ * 	Every other INTERVAL, both engines are asked to 'act()' instead.
+ * 	Factor is reduced from 10 to 5 gradually as time passes, to speed up gameplay.
+ *
+ * Seeding:
+ * 	TetrisMatch(player, opp, seed) seeds the coin and both engines (see TetrisEngine.setSeed) from seed
+ * 		and restarts them, so a match of deterministic players (like two TetrisHeuristicAIs) plays out
+ * 		exactly the same every time. TetrisMatch(player, opp) uses a fresh seed for the coin.
+ * 	restart(seed) does the same for a new round.
+ * 	setRecorder(MatchRecorder): record the commands both engines get, tick by tick (see MatchReplayer)
+ * 
+ * Methods:
+ * 	tick(): advance the match by one INTERVAL
+ * 	isOver(): true once either side has lost
+ * 	playerLost(): true if the player (the right side in TetrisControl) is the one who lost
+ * 	restart(): clear both boards and the clock for a new round
+ * 	resetClock(): only reset the clock
+ *
+ * main(String[] args): plays args[0] (default 100) AI vs AI matches headless and prints throughput.
+ * 	Both AIs share one EvaluationCache of args[1] (default 65536) boards, and its hit rate is printed too.
+ * 	If args[2] is given, match i is seeded with args[2] + i, so the run can be repeated exactly.
+ *
+ */
+
+public class TetrisMatch
+{
+	public static int INTERVAL = 50; // ms
+
+	private TetrisEngine player;
+	private TetrisEngine opp;
+	private int startTime=0;
+	private GameRandom coin;
+	private MatchRecorder recorder = null;
+
+	public TetrisMatch(TetrisEngine player, TetrisEngine opp)
+	{
+		this.player = player;
+		this.opp = opp;
+		player.setOpponent(opp);
+		opp.setOpponent(player);
+		coin = new GameRandom(GameRandom.newSeed());
+	}
+	public TetrisMatch(TetrisEngine player, TetrisEngine opp, long seed)
+	{
+		this(player, opp);
+		restart(seed);
+	}
+
+	public TetrisEngine player()
+	{
+		return player;
+	}
+	public TetrisEngine opp()
+	{
+		return opp;
+	}
+	public int elapsed()
+	{
+		return startTime;
+	}
+
+	public void setRecorder(MatchRecorder recorder)
+	{
+		this.recorder = recorder;
+		player.setRecorder(recorder, MatchRecorder.PLAYER);
+		opp.setRecorder(recorder, MatchRecorder.OPP);
+	}
+
+	public void tick()
+	{
+		if (recorder != null)
+			recorder.startTick();
+		// As time passes, the game goes faster.
+		int factor = 10;
+		if(startTime>=60000)
+			factor=9;
+		if(startTime>=120000)
+			factor=8;
+		if(startTime>=180000)
+			factor=7;
+		if(startTime>=240000)
+			factor=6;
+		if(startTime>=300000)
+			factor=5;
+
+		// the Tetris board only moves every 'factor' INTERVALs of time.
+		if (startTime % (factor * INTERVAL) == 0)
+		{
+			if(coin.nextDouble()>.5)//for fairness
+			{
+				player.play();
+				opp.play();
+			}
+			else
+			{
+				opp.play();
+				player.play();
+			}
+		}
+		else
+		{
+			player.act();
+			opp.act();
+		}
+		startTime+=INTERVAL;
+		if (recorder != null)
+			recorder.endTick();
+	}
+
+	public boolean isOver()
+	{
+		return !player.notLost() || !opp.notLost();
+	}
+	public boolean playerLost()
+	{
+		return !player.notLost();
+	}
+
+	/* Reset the game boards */
+	public void restart()
+	{
+		player.setOpponent(opp);
+		opp.setOpponent(player);
+		player.restart();
+		opp.restart();
+		startTime=0;
+	}
+	public void restart(long seed)
+	{
+		GameRandom root = new GameRandom(seed);
+		coin = root.split();
+		player.setSeed(root.nextLong());
+		opp.setSeed(root.nextLong());
+		restart();
+	}
+	public void resetClock()
+	{
+		startTime=0;
+	}
+
+	// Play AI vs AI matches back to back without any UI, as fast as they will go.
+	public static void main(String[] args)
+	{
+		System.setProperty("java.awt.headless", "true");
+		int games = 100;
+		if (args.length > 0)
+			games = Integer.parseInt(args[0]);
+
+		EvaluationCache cache = new EvaluationCache(args.length > 1 ? Integer.parseInt(args[1]) : 1 << 16);
+		boolean seeded = args.length > 2;
+		long seed = seeded ? Long.parseLong(args[2]) : 0;
+
+		long ticks = 0;
+		long begin = System.nanoTime();
+		for (int i = 0; i < games; i++)
+		{
+			TetrisEngine left = new TetrisEngine();
+			TetrisEngine right = new TetrisEngine();
+			new TetrisHeuristicAI(left).setCache(cache);
+			new TetrisHeuristicAI(right).setCache(cache);
+
+			TetrisMatch match = seeded ? new TetrisMatch(right, left, seed + i) : new TetrisMatch(right, left);
+			while (!match.isOver())
+			{
+				match.tick();
+				ticks++;
+			}
+		}
+		double seconds = (System.nanoTime() - begin) / 1e9;
+		System.out.println(games + " games, " + ticks + " ticks in " + seconds + " s");
+		System.out.println((int)(games / seconds * 60) + " games per minute, " + (int)(ticks / seconds) + " ticks per second");
+		System.out.println("evaluation cache: " + cache.capacity() + " boards, " + cache.hits() + " hits, "
+			+ cache.misses() + " misses (" + (int)(cache.hitRate() * 100) + "%)");
+	}
+}
@@ -0,0 +1,266 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/** TetrisTournament.java
+ *
+ * Plays many AI vs AI TetrisMatches between two AI variants, headless, on every core, and reports
+ * 	how each variant did: win rate, score, the engine's stats[] (singles, doubles, triples, tetrises,
+ * 	rows sent) and how long the matches lasted. For comparing AIs.
+ *
+ * A variant is "AI" (TetrisHeuristicAI) or "AI2" (TetrisHeuristicAI2), optionally with "+lookahead"
+ * 	(see TetrisHeuristicAI.setLookahead), e.g. "AI2+lookahead".
+ * 	For now AI2's own board weighing is commented out, so it plays exactly like AI.
+ *
+ * Matches are played in pairs on the same seed (see TetrisMatch(player, opp, seed)): match 2k is
+ * 	seeded seed + k with variant A on the right, match 2k + 1 the same with the sides swapped. So each
+ * 	variant plays the other's pieces and garbage holes too, and luck mostly cancels out.
+ * 	Every match is decided by its seed alone, so a tournament gives the same report on any number of
+ * 	threads, and can be repeated with the same seed.
+ *
+ * Each match runs on one worker thread, start to finish. Workers share nothing they write to:
+ * 	the AIs search serially, and each worker keeps its own EvaluationCache per AI class (the cache's
+ * 	hit counters would be contended by every core otherwise). Results are added up in match order.
+ *
+ * Methods:
+ * 	TetrisTournament(String variantA, String variantB, int threads)
+ * 	play(int games, long seed): play games matches (blocks until they are all over); can be called again
+ * 	String report()
+ * 	static TetrisHeuristicAI newAI(String variant, TetrisEngine engine)
+ *
+ * main(String[] args): TetrisTournament [games] [variantA] [variantB] [threads] [seed]
+ * 	defaults: 100 games of AI vs AI+lookahead, a thread per core, a fresh seed (printed, to repeat the run)
+ *
+ */
+
+public class TetrisTournament
+{
+	private String[] variants;
+	private int threads;
+
+	private int games = 0;
+	private long ticks = 0;
+	private int minTicks = Integer.MAX_VALUE, maxTicks = 0;
+	private int[] wins = new int[2]; // per variant
+	private long[] scores = new long[2];
+	private long[][] stats = new long[2][5];
+	private long nanos = 0; // wall time playing
+
+	private List<EvaluationCache> caches = new ArrayList<EvaluationCache>(); // every worker's, for the hit rate
+	private ThreadLocal<HashMap<String, EvaluationCache>> workerCaches = new ThreadLocal<HashMap<String, EvaluationCache>>()
+	{
+		protected HashMap<String, EvaluationCache> initialValue()
+		{
+			return new HashMap<String, EvaluationCache>();
+		}
+	};
+
+	// One match: what the tournament needs from it, once it is over
+	private static class Result
+	{
+		int ticks;
+		boolean aLost;
+		int[] scores = new int[2]; // per variant
+		int[][] stats = new int[2][];
+	}
+
+	public TetrisTournament(String variantA, String variantB, int threads)
+	{
+		variants = new String[] { variantA, variantB };
+		this.threads = threads;
+		newAI(variantA, new TetrisEngine(0)); // unknown variants fail here, not on a worker
+		newAI(variantB, new TetrisEngine(0));
+	}
+
+	public static TetrisHeuristicAI newAI(String variant, TetrisEngine engine)
+	{
+		String[] parts = variant.split("\\+");
+		TetrisHeuristicAI ai;
+		if (parts[0].equals("AI"))
+			ai = new TetrisHeuristicAI(engine);
+		else if (parts[0].equals("AI2"))
+			ai = new TetrisHeuristicAI2(engine);
+		else
+			throw new IllegalArgumentException("unknown AI variant: " + variant);
+
+		for (int i = 1; i < parts.length; i++)
+		{
+			if (parts[i].equals("lookahead"))
+				ai.setLookahead(true);
+			else
+				throw new IllegalArgumentException("unknown AI option: " + parts[i]);
+		}
+		return ai;
+	}
+
+	public void play(int games, final long seed)
+	{
+		ExecutorService pool = Executors.newFixedThreadPool(threads, new ThreadFactory()
+		{
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "TetrisTournament worker");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+
+		long begin = System.nanoTime();
+		List<Future<Result>> results = new ArrayList<Future<Result>>(games);
+		for (int i = 0; i < games; i++)
+		{
+			final int match = i;
+			results.add(pool.submit(new Callable<Result>()
+			{
+				public Result call()
+				{
+					return playMatch(seed + match / 2, match % 2 == 0);
+				}
+			}));
+		}
+		try
+		{
+			for (Future<Result> result : results)
+				add(result.get());
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		catch (ExecutionException e)
+		{
+			throw new RuntimeException(e.getCause());
+		}
+		finally
+		{
+			pool.shutdownNow();
+			nanos += System.nanoTime() - begin;
+		}
+	}
+
+	// On a worker thread
+	private Result playMatch(long seed, boolean aOnRight)
+	{
+		TetrisEngine a = new TetrisEngine();
+		TetrisEngine b = new TetrisEngine();
+		newAI(variants[0], a).setCache(cache(variants[0]));
+		newAI(variants[1], b).setCache(cache(variants[1]));
+
+		TetrisMatch match = aOnRight ? new TetrisMatch(a, b, seed) : new TetrisMatch(b, a, seed);
+		Result r = new Result();
+		while (!match.isOver())
+		{
+			match.tick();
+			r.ticks++;
+		}
+		r.aLost = (match.playerLost() == aOnRight);
+		r.scores[0] = a.getScore();
+		r.scores[1] = b.getScore();
+		r.stats[0] = a.getStats();
+		r.stats[1] = b.getStats();
+		return r;
+	}
+
+	// This worker's cache for the variant's AI class (only AIs that weigh boards the same way share one)
+	private EvaluationCache cache(String variant)
+	{
+		String kind = variant.split("\\+")[0];
+		HashMap<String, EvaluationCache> mine = workerCaches.get();
+		EvaluationCache cache = mine.get(kind);
+		if (cache == null)
+		{
+			cache = new EvaluationCache(1 << 16);
+			mine.put(kind, cache);
+			synchronized (caches)
+			{
+				caches.add(cache);
+			}
+		}
+		return cache;
+	}
+
+	private void add(Result r)
+	{
+		games++;
+		ticks += r.ticks;
+		minTicks = Math.min(minTicks, r.ticks);
+		maxTicks = Math.max(maxTicks, r.ticks);
+		wins[r.aLost ? 1 : 0]++;
+		for (int v = 0; v < 2; v++)
+		{
+			scores[v] += r.scores[v];
+			for (int s = 0; s < stats[v].length; s++)
+				stats[v][s] += r.stats[v][s];
+		}
+	}
+
+	public String report()
+	{
+		if (games == 0)
+			return "no games played";
+		String[] names = variants.clone();
+		if (names[0].equals(names[1]))
+		{
+			names[0] += " (A)";
+			names[1] += " (B)";
+		}
+
+		StringBuilder s = new StringBuilder();
+		s.append(String.format("%-22s %14s %14s%n", "", names[0], names[1]));
+		s.append(String.format("%-22s %14s %14s%n", "Wins", wins[0], wins[1]));
+		s.append(String.format("%-22s %14s %14s%n", "Win rate (95%)", winRate(wins[0]), winRate(wins[1])));
+		s.append(String.format("%-22s %14.0f %14.0f%n", "Score per game", (double)scores[0] / games, (double)scores[1] / games));
+		String[] statNames = { "Singles", "Doubles", "Triples", "Tetrises", "Rows Sent" };
+		for (int i = 0; i < statNames.length; i++)
+			s.append(String.format("%-22s %14.2f %14.2f%n", statNames[i] + " per game",
+				(double)stats[0][i] / games, (double)stats[1][i] / games));
+
+		double seconds = TetrisMatch.INTERVAL / 1000.0; // of game time per tick
+		s.append(String.format("%nMatch length: %.0f s on average (%d to %d s of game time), %d ticks in all%n",
+			ticks * seconds / games, (int)(minTicks * seconds), (int)(maxTicks * seconds), ticks));
+		double wall = nanos / 1e9;
+		s.append(String.format("%d games on %d threads in %.1f s: %.0f games per minute, %.0f ticks per second%n",
+			games, threads, wall, games / wall * 60, ticks / wall));
+
+		long hits = 0, misses = 0;
+		synchronized (caches)
+		{
+			for (EvaluationCache cache : caches)
+			{
+				hits += cache.hits();
+				misses += cache.misses();
+			}
+		}
+		s.append(String.format("evaluation caches: %d, %d%% hits%n", caches.size(),
+			(hits + misses == 0) ? 0 : (int)(hits * 100 / (hits + misses))));
+		return s.toString();
+	}
+
+	// The win rate with the half-width of its 95% confidence interval
+	private String winRate(int won)
+	{
+		double p = (double)won / games;
+		return String.format("%.1f%% +-%.1f", p * 100, 196 * Math.sqrt(p * (1 - p) / games));
+	}
+
+	public static void main(String[] args)
+	{
+		System.setProperty("java.awt.headless", "true");
+		int games = (args.length > 0) ? Integer.parseInt(args[0]) : 100;
+		String a = (args.length > 1) ? args[1] : "AI";
+		String b = (args.length > 2) ? args[2] : "AI+lookahead";
+		int threads = (args.length > 3) ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+		long seed = (args.length > 4) ? Long.parseLong(args[4]) : GameRandom.newSeed();
+
+		System.out.println(a + " vs " + b + ", " + games + " games, seed " + seed);
+		TetrisTournament tournament = new TetrisTournament(a, b, threads);
+		tournament.play(games, seed);
+		System.out.print(tournament.report());
+	}
+}
@@ -0,0 +1,120 @@
+/** TickScheduler.java
+ * 
+ * Keeps fixed-length ticks in step with real time, measured with System.nanoTime().
+ * 	Tick n is due at start + n * period, no matter how long the earlier ticks took, so game time
+ * 	never falls behind wall time. If the work falls behind (a slow AI, a slow repaint),
+ * 	due() returns every tick that was missed so they can be run back to back.
+ * 	After a long stall (more than maxCatchUp ticks behind) the extra ticks are dropped rather than
+ * 	run in a burst, and are counted.
+ * 
+ * Methods:
+ * 	reset(): make the next tick due now, e.g. after a pause
+ * 	int due(): how many ticks to run now (0 if the next one isn't due yet)
+ * 	long nanosToNext(): how long until the next tick is due (0 or less if it is due)
+ * 	awaitNext(): sleep until the next tick is due
+ * 
+ * Overrun metrics (since the last resetStats()):
+ * 	ticks(): ticks handed out by due()
+ * 	overruns(): how many times due() found more than one tick due, because the work ran long
+ * 	caughtUp(): ticks run late, back to back, to catch up
+ * 	dropped(): ticks skipped after a stall
+ * 	maxLatenessMillis(): the furthest behind due() has been
+ * 
+ */
+
+public class TickScheduler
+{
+	private long period; // ns
+	private volatile long next; // when the next tick is due (reset() may come from the event thread)
+	private int maxCatchUp = 10; // ticks
+	
+	private long ticks;
+	private long overruns;
+	private long caughtUp;
+	private long dropped;
+	private long maxLateness; // ns
+	
+	public TickScheduler(int intervalMillis)
+	{
+		period = intervalMillis * 1000000L;
+		reset();
+	}
+	
+	public void reset()
+	{
+		next = System.nanoTime();
+	}
+	
+	public void setMaxCatchUp(int ticks)
+	{
+		maxCatchUp = Math.max(1, ticks);
+	}
+	
+	public int due()
+	{
+		long lateness = System.nanoTime() - next;
+		if (lateness < 0)
+			return 0;
+		
+		long n = lateness / period + 1;
+		next += n * period;
+		maxLateness = Math.max(maxLateness, lateness);
+		if (n > 1)
+			overruns++;
+		if (n > maxCatchUp)
+		{
+			dropped += n - maxCatchUp;
+			n = maxCatchUp;
+		}
+		caughtUp += n - 1;
+		ticks += n;
+		return (int)n;
+	}
+	
+	public long nanosToNext()
+	{
+		return next - System.nanoTime();
+	}
+	
+	public void awaitNext() throws InterruptedException
+	{
+		long wait = next - System.nanoTime();
+		if (wait > 0)
+			Thread.sleep(wait / 1000000, (int)(wait % 1000000));
+	}
+	
+	public long ticks()
+	{
+		return ticks;
+	}
+	public long overruns()
+	{
+		return overruns;
+	}
+	public long caughtUp()
+	{
+		return caughtUp;
+	}
+	public long dropped()
+	{
+		return dropped;
+	}
+	public double maxLatenessMillis()
+	{
+		return maxLateness / 1e6;
+	}
+	public void resetStats()
+	{
+		ticks = 0;
+		overruns = 0;
+		caughtUp = 0;
+		dropped = 0;
+		maxLateness = 0;
+	}
+	
+	public String toString()
+	{
+		return ticks + " ticks, " + overruns + " overruns, " + caughtUp + " caught up, " + dropped
+			+ " dropped, at most " + maxLatenessMillis() + " ms late";
+	}
+}